@@ -1,16 +1,20 @@
 
 import java.awt.BorderLayout;
-import java.awt.Image;
-import java.awt.Rectangle;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferByte;
 import java.io.File;
 import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
@@ -19,29 +23,51 @@ import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 
-import org.opencv.core.Core;
-import org.opencv.core.CvType;
-import org.opencv.core.Mat;
-import org.opencv.core.Rect;
-import org.opencv.core.Scalar;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import net.sourceforge.tess4j.ITessAPI;
 import net.sourceforge.tess4j.ITesseract;
-import net.sourceforge.tess4j.Tesseract;
 import net.sourceforge.tess4j.TesseractException;
-import net.sourceforge.tess4j.Word;
 
 public class AadhaarMaskApp extends JFrame {
 
+	private static final Logger log = LoggerFactory.getLogger(AadhaarMaskApp.class);
+
+	private static final int PREVIEW_WIDTH = 600;
+	private static final int PREVIEW_HEIGHT = 400;
+
 	private File selectedFile;
+	private int pageCount;
 	private JTextArea textArea;
 	private BufferedImage originalImage;
 	private BufferedImage maskedImage;
+	private ImageIcon maskedPreview;
 	private JPanel mainPanel;
+	private final JLabel imageLabel = new JLabel();
+	private final JProgressBar progressBar = new JProgressBar(0, 100);
+	private final JButton uploadButton = new JButton("Upload a File");
+	private final JButton downloadButton = new JButton("Download Masked Image");
+	private final JButton cancelButton = new JButton("Cancel");
+	// A single document at the counter: spread tall scans across every core
+	private final MaskPipeline pipeline = new MaskPipeline(MaskPipeline.DEFAULT_OCR_CACHE_SIZE,
+			MaskPolicy.configured(), OcrProfile.configuredCascade(),
+			new BandedOcr(Runtime.getRuntime().availableProcessors()));
+	private final ITesseract tesseract = Bootstrap.newEngine();
+	private final OutputWriter outputWriter = new OutputWriter(1, 1, OutputWriter.Format.configured());
+
+	// One worker thread: the Tesseract instance is not thread-safe and jobs run one at a time anyway
+	private final ExecutorService background = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "mask-worker");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private SwingWorker<?, ?> currentTask;
 
 	public AadhaarMaskApp() {
 		setTitle("Aadhaar Masking App");
@@ -57,20 +83,39 @@ public class AadhaarMaskApp extends JFrame {
 		JScrollPane scrollPane = new JScrollPane(textArea);
 
 		JPanel buttonPanel = new JPanel();
-		JButton uploadButton = new JButton("Upload a File");
 		uploadButton.addActionListener(new UploadButtonListener());
-		JButton downloadButton = new JButton("Download Masked Image");
 		downloadButton.addActionListener(new DownloadButtonListener());
+		cancelButton.addActionListener(e -> {
+			if (currentTask != null) {
+				currentTask.cancel(true);
+			}
+		});
+		cancelButton.setEnabled(false);
+		progressBar.setStringPainted(true);
+		progressBar.setString("Idle");
 		buttonPanel.add(uploadButton);
 		buttonPanel.add(downloadButton);
+		buttonPanel.add(cancelButton);
+		buttonPanel.add(progressBar);
+
+		// The label is reused for every preview instead of stacking new panels
+		imageLabel.setHorizontalAlignment(JLabel.CENTER);
 
 		mainPanel.add(scrollPane, BorderLayout.NORTH);
+		mainPanel.add(imageLabel, BorderLayout.CENTER);
 		mainPanel.add(buttonPanel, BorderLayout.SOUTH);
 
 		add(mainPanel);
 
-		// Load OpenCV library
-//		System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+		// Runs before the first upload on the same worker, so that upload is not the slow one
+		background.execute(() -> {
+			try {
+				Bootstrap.warmUp(pipeline, tesseract);
+				Bootstrap.ready();
+			} catch (TesseractException | RuntimeException ex) {
+				log.warn("Warm-up failed", ex);
+			}
+		});
 	}
 
 	private class UploadButtonListener implements ActionListener {
@@ -80,40 +125,10 @@ public class AadhaarMaskApp extends JFrame {
 			if (result == JFileChooser.APPROVE_OPTION) {
 				selectedFile = fileChooser.getSelectedFile();
 				textArea.append("File Selected: " + selectedFile.getName() + "\n");
-
-				// Load the original image and display it
-				try {
-					originalImage = ImageIO.read(selectedFile);
-					displayImage(originalImage);
-
-					// Perform OCR to get Aadhaar number
-					String aadhaarNumber = performOCR(originalImage);
-					if (aadhaarNumber != null) {
-						textArea.append("Extracted Aadhaar Number: " + aadhaarNumber + "\n");
-
-						// Convert BufferedImage to OpenCV Mat
-						Mat matImage = bufferedImageToMat(originalImage);
-
-						// Perform OCR to get Aadhaar number position
-						Rect aadhaarRect = performOcrForPosition(matImage, aadhaarNumber);
-						System.out.println("aadhaarRect=" + aadhaarRect);
-						if (aadhaarRect != null) {
-							// Mask Aadhaar number
-							originalImage = maskAadhaarNumber(originalImage, aadhaarRect);
-
-							// Display the masked image on the canvas
-							displayImage(originalImage);
-						} else {
-							textArea.append("Error: Aadhaar number position not found.\n");
-						}
-					} else {
-						textArea.append("Error: Aadhaar number not found or invalid.\n");
-					}
-
-				} catch (IOException ex) {
-					textArea.append("Error loading image.\n");
-					ex.printStackTrace();
-				}
+				originalImage = null;
+				maskedImage = null;
+				maskedPreview = null;
+				start(new UploadTask(selectedFile));
 			}
 		}
 	}
@@ -124,190 +139,268 @@ public class AadhaarMaskApp extends JFrame {
 				textArea.append("Error: No image selected.\n");
 				return;
 			}
-
-			// Perform OCR to get Aadhaar number
-			String aadhaarNumber = performOCR(originalImage);
-
-			if (aadhaarNumber == null || aadhaarNumber.length() < 8) {
-				textArea.append("Error: Aadhaar number not found or invalid.\n");
+			if (pageCount > 1) {
+				start(new DownloadAllPagesTask(selectedFile));
 				return;
 			}
 
-			// Convert BufferedImage to OpenCV Mat
-			Mat matImage = bufferedImageToMat(originalImage);
-
-			// Perform OCR to get Aadhaar number position
-			Rect aadhaarRect = performOcrForPosition(matImage, aadhaarNumber);
+			// The upload already masked the image; nothing is recognized again here
+			if (maskedImage == null) {
+				textArea.append("Error: Aadhaar number not found on the image.\n");
+				return;
+			}
+			start(new DownloadTask(selectedFile, maskedImage, maskedPreview));
+		}
+	}
 
-			if (aadhaarRect != null) {
-				// Mask Aadhaar number
-				originalImage = maskAadhaarNumber(originalImage, aadhaarRect);
+	/** Loads, previews and masks the selected file, reporting each stage on the progress bar. */
+	private class UploadTask extends SwingWorker<MaskResult, Object> {
+		private final File file;
+		private BufferedImage image;
+		private ImageIcon preview;
+		private int pages;
 
-				// Save the masked image to a file
-				File outputMaskedFile = new File("C:\\AadharImg\\masked_aadhaar_image.png");
-				try {
-					ImageIO.write(originalImage, "png", outputMaskedFile);
-					textArea.append("Masked Aadhaar image saved as 'masked_aadhaar_image.png'\n");
+		UploadTask(File file) {
+			this.file = file;
+		}
 
-					// Display the masked image
-					showMaskedImage(originalImage);
-				} catch (IOException ex) {
-					textArea.append("Error saving masked Aadhaar image.\n");
-					ex.printStackTrace();
+		@Override
+		protected MaskResult doInBackground() throws Exception {
+			stage("Loading image", 5);
+			image = ImageIO.read(file);
+			if (image == null) {
+				throw new IOException("Unsupported image format");
+			}
+			pages = MultiPageMasker.isMultiPageFormat(file) ? MultiPageMasker.countPages(file) : 1;
+
+			// Show something immediately, then replace it with the smooth version
+			Dimension size = previewSize(image);
+			publish(new ImageIcon(scale(image, size, false)));
+			publish(new ImageIcon(scale(image, size, true)));
+
+			stage("Straightening", 15);
+			Map<String, Long> stageNanos = new LinkedHashMap<>();
+			Detection detection = pipeline.detect(tesseract, image, stageNanos, finished -> {
+				if (MaskPipeline.STAGE_DESKEW.equals(finished)) {
+					stage("Reading text", 25);
+				} else if (MaskPipeline.STAGE_OCR.equals(finished)) {
+					stage("Locating number", 80);
+				} else if (MaskPipeline.STAGE_LOCALIZE.equals(finished)) {
+					stage("Masking", 90);
 				}
-			} else {
-				textArea.append("Error: Aadhaar number not found on the image.\n");
+			});
+			MaskPipeline.checkInterrupted();
+			MaskResult result = pipeline.mask(image, detection, stageNanos);
+			if (result.isMasked()) {
+				// Cached so Download can show the result without scaling again
+				preview = new ImageIcon(scale(result.getImage(), size, true));
+				publish(preview);
 			}
+			stage("Done", 100);
+			return result;
 		}
-	}
 
-	private String performOCR(BufferedImage image) {
-		String aadhaarNumber = null;
-		ITesseract tesseract = new Tesseract();
-		tesseract.setDatapath("C:\\Users\\Bhaiyya Shaikh\\AppData\\Local\\Programs\\Tesseract-OCR\\tessdata");
-		tesseract.setLanguage("eng");
-
-		try {
-			aadhaarNumber = tesseract.doOCR(image);
-			aadhaarNumber = extractAadhaarNumber(aadhaarNumber);
-			System.out.println("Extracted Aadhaar Number: " + aadhaarNumber);
-		} catch (TesseractException ex) {
-			textArea.append("Error performing OCR.\n");
-			ex.printStackTrace();
+		private void stage(String name, int progress) {
+			publish(name);
+			setProgress(progress);
 		}
 
-		return aadhaarNumber;
-	}
+		@Override
+		protected void process(List<Object> chunks) {
+			for (Object chunk : chunks) {
+				if (chunk instanceof String) {
+					progressBar.setString((String) chunk);
+				} else {
+					imageLabel.setIcon((ImageIcon) chunk);
+				}
+			}
+		}
 
-	private String extractAadhaarNumber(String ocrResult) {
-		String regexPattern = "\\b\\d{4} \\d{4} \\d{4}\\b";
-		Pattern pattern = Pattern.compile(regexPattern);
-		Matcher matcher = pattern.matcher(ocrResult);
-		String aadharNumber = "";
-		while (matcher.find()) {
-			aadharNumber = matcher.group();
+		@Override
+		protected void done() {
+			finish(this);
+			if (isCancelled()) {
+				textArea.append("Cancelled.\n");
+				return;
+			}
+			try {
+				MaskResult maskResult = get();
+				originalImage = image;
+				pageCount = pages;
+				if (pageCount > 1) {
+					textArea.append("Document has " + pageCount + " pages; showing page 1. Download masks every page.\n");
+				}
+				if (maskResult.isNumberFound()) {
+					textArea.append("Extracted Aadhaar Number: " + maskResult.getAadhaarNumber() + "\n");
+					log.debug("Masked regions {}", maskResult.getRegions());
+					if (maskResult.isMasked()) {
+						maskedImage = maskResult.getImage();
+						maskedPreview = preview;
+					} else {
+						textArea.append("Error: Aadhaar number position not found.\n");
+					}
+				} else {
+					textArea.append("Error: Aadhaar number not found or invalid.\n");
+				}
+			} catch (InterruptedException | CancellationException ex) {
+				textArea.append("Cancelled.\n");
+			} catch (ExecutionException ex) {
+				if (ex.getCause() instanceof CancellationException) {
+					textArea.append("Cancelled.\n");
+				} else if (ex.getCause() instanceof TesseractException) {
+					textArea.append("Error performing OCR.\n");
+					log.error("OCR failed", ex.getCause());
+				} else {
+					textArea.append("Error loading image.\n");
+					log.error("Could not load {}", file, ex.getCause());
+				}
+			}
 		}
-		return aadharNumber;
 	}
 
+	private class DownloadTask extends SwingWorker<File, Void> {
+		private final File source;
+		private final BufferedImage image;
+		private final ImageIcon preview;
 
-	private BufferedImage maskAadhaarNumber(BufferedImage image, Rect aadhaarRect) {
-		// Convert BufferedImage to OpenCV Mat
-		Mat matImage = bufferedImageToMat(image);
-
-		// Calculate the starting point for the masking rectangle
-		int startX = aadhaarRect.x;
-		int startY = aadhaarRect.y;
-
-		// Create a black rectangle to mask the Aadhaar number
-		Rect maskRect = new Rect(startX, startY, aadhaarRect.width, aadhaarRect.height);
-		Mat blackRect = new Mat(maskRect.size(), CvType.CV_8UC3, new Scalar(0, 0, 0));
+		DownloadTask(File source, BufferedImage image, ImageIcon preview) {
+			this.source = source;
+			this.image = image;
+			this.preview = preview;
+		}
 
-		// Overlay the black rectangle onto the original image at the Aadhaar number's
-		// position
-		Mat roi = matImage.submat(maskRect);
-		blackRect.copyTo(roi);
+		@Override
+		protected File doInBackground() throws IOException {
+			setProgress(10);
+			// Save the masked image next to earlier outputs, never over one
+			File outputMaskedFile = outputWriter.write(image, OutputLocation.directory(),
+					OutputLocation.baseName(source) + "_masked");
+			setProgress(100);
+			return outputMaskedFile;
+		}
 
-		// Convert the modified Mat back to BufferedImage
-		return matToBufferedImage(matImage);
+		@Override
+		protected void done() {
+			finish(this);
+			if (isCancelled()) {
+				textArea.append("Cancelled.\n");
+				return;
+			}
+			try {
+				File output = get();
+				textArea.append("Masked Aadhaar image saved as '" + output.getName() + "'\n");
+				showMaskedImage(preview);
+			} catch (InterruptedException | ExecutionException ex) {
+				textArea.append("Error saving masked Aadhaar image.\n");
+				log.error("Could not save the masked image", ex);
+			}
+		}
 	}
 
-	private Rect performOcrForPosition(Mat image, String aadhaarNumber) {
-		ITesseract tesseract = new Tesseract();
-		tesseract.setDatapath("C:\\\\Users\\\\Bhaiyya Shaikh\\\\AppData\\\\Local\\\\Programs\\\\Tesseract-OCR\\\\tessdata");
-		tesseract.setLanguage("eng");
-
-		try {
-			BufferedImage bufferedImage = matToBufferedImage(image);
-			String ocrResult = tesseract.doOCR(bufferedImage);
-			System.out.println("OCR Result: " + ocrResult); // Add this line for debugging
-
-			List<Word> words = tesseract.getWords(bufferedImage, ITessAPI.TessPageIteratorLevel.RIL_WORD);
-			
-			for (Word word : words) {
-				String wordText = word.getText().replaceAll("\\s+", "");; // Remove spaces from word text
-				System.out.println("wordText  ==" + wordText);
-System.out.println("aadhaarNumber  =="+aadhaarNumber);
-				String FirstFour = aadhaarNumber.substring(0, 9);
-				System.out.println("FirstFour ==" + FirstFour.length());
-				if (FirstFour.equals(wordText)) {
-					Rectangle boundingBox = word.getBoundingBox();
-					System.out.println("boundingBox ==" + boundingBox.x);
-					Rect openCVRect = new Rect(boundingBox.x, boundingBox.y, boundingBox.width, boundingBox.height);
-					return openCVRect;
-				}
+	/** Streams every page through the pipeline into a multi-page TIFF. */
+	private class DownloadAllPagesTask extends SwingWorker<MultiPageMasker.Summary, Void> {
+		private final File input;
+		private File output;
 
-				String SecondFour = aadhaarNumber.substring(5, 9);
-				System.out.println("SecondFour  ==" + SecondFour.length());
-				if (SecondFour.equals(wordText)) {
-					Rectangle boundingBox = word.getBoundingBox();
-					System.out.println("boundingBox ==" + boundingBox.x);
-					Rect openCVRect = new Rect(boundingBox.x, boundingBox.y, boundingBox.width, boundingBox.height);
-					return openCVRect;
+		DownloadAllPagesTask(File input) {
+			this.input = input;
+		}
 
-				}
+		@Override
+		protected MultiPageMasker.Summary doInBackground() throws IOException, TesseractException {
+			output = OutputLocation.forSource(input, "tif");
+			return new MultiPageMasker(pipeline).mask(input, output, tesseract);
+		}
 
+		@Override
+		protected void done() {
+			finish(this);
+			if (isCancelled()) {
+				textArea.append("Cancelled.\n");
+				return;
+			}
+			try {
+				MultiPageMasker.Summary summary = get();
+				textArea.append("Masked " + summary.getMaskedPages() + " of " + summary.getPages()
+						+ " pages, saved as '" + output.getName() + "'\n");
+			} catch (InterruptedException | ExecutionException ex) {
+				textArea.append("Error saving masked Aadhaar document.\n");
+				log.error("Could not mask {}", input, ex);
 			}
-		} catch (TesseractException ex) {
-			textArea.append("Error performing OCR for position.\n");
-			ex.printStackTrace();
 		}
-
-		return null;
 	}
 
-	private Mat bufferedImageToMat(BufferedImage image) {
-		int type = image.getType();
-		int numChannels = (type == BufferedImage.TYPE_3BYTE_BGR) ? 3 : 1;
-
-		Mat mat = new Mat(image.getHeight(), image.getWidth(), CvType.CV_8UC(numChannels));
-		byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
-		mat.put(0, 0, data);
-
-		return mat;
+	private void start(SwingWorker<?, ?> task) {
+		currentTask = task;
+		uploadButton.setEnabled(false);
+		downloadButton.setEnabled(false);
+		cancelButton.setEnabled(true);
+		progressBar.setValue(0);
+		progressBar.setString("Working");
+		progressBar.setIndeterminate(task instanceof DownloadAllPagesTask);
+		task.addPropertyChangeListener(event -> {
+			if ("progress".equals(event.getPropertyName())) {
+				progressBar.setValue((Integer) event.getNewValue());
+			}
+		});
+		background.execute(task);
 	}
 
-	private BufferedImage matToBufferedImage(Mat mat) {
-		int type = BufferedImage.TYPE_BYTE_GRAY;
-		if (mat.channels() > 1) {
-			type = BufferedImage.TYPE_3BYTE_BGR;
+	private void finish(SwingWorker<?, ?> task) {
+		if (currentTask == task) {
+			currentTask = null;
 		}
-
-		int bufferSize = mat.channels() * mat.cols() * mat.rows();
-		byte[] data = new byte[bufferSize];
-		mat.get(0, 0, data);
-
-		BufferedImage image = new BufferedImage(mat.cols(), mat.rows(), type);
-		image.getRaster().setDataElements(0, 0, mat.cols(), mat.rows(), data);
-
-		return image;
+		uploadButton.setEnabled(true);
+		downloadButton.setEnabled(true);
+		cancelButton.setEnabled(false);
+		progressBar.setIndeterminate(false);
+		progressBar.setValue(task.isCancelled() ? 0 : 100);
+		progressBar.setString(task.isCancelled() ? "Cancelled" : "Idle");
 	}
 
-	private void displayImage(BufferedImage image) {
-		int width = 600;
+	private static Dimension previewSize(BufferedImage image) {
+		int width = PREVIEW_WIDTH;
 		int height = (int) ((double) width / image.getWidth() * image.getHeight());
-		if (height > 400) {
-			height = 400;
+		if (height > PREVIEW_HEIGHT) {
+			height = PREVIEW_HEIGHT;
 			width = (int) ((double) height / image.getHeight() * image.getWidth());
 		}
-		Image resizedImage = image.getScaledInstance(width, height, Image.SCALE_SMOOTH);
-		ImageIcon imageIcon = new ImageIcon(resizedImage);
+		return new Dimension(Math.max(1, width), Math.max(1, height));
+	}
 
-		JLabel imageLabel = new JLabel(imageIcon);
-		JPanel imagePanel = new JPanel();
-		imagePanel.add(imageLabel);
+	/**
+	 * Scales for display. The fast path is a single nearest-neighbour draw; the
+	 * smooth path halves the image with bilinear steps until it is close to the
+	 * target, which looks as good as SCALE_SMOOTH at a fraction of the cost.
+	 */
+	private static BufferedImage scale(BufferedImage image, Dimension size, boolean smooth) {
+		BufferedImage current = image;
+		if (smooth) {
+			while (current.getWidth() / 2 >= size.width && current.getHeight() / 2 >= size.height) {
+				current = draw(current, current.getWidth() / 2, current.getHeight() / 2,
+						RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			}
+		}
+		return draw(current, size.width, size.height, smooth ? RenderingHints.VALUE_INTERPOLATION_BILINEAR
+				: RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+	}
 
-		mainPanel.add(imagePanel, BorderLayout.CENTER);
-		mainPanel.revalidate();
+	private static BufferedImage draw(BufferedImage source, int width, int height, Object interpolation) {
+		BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2d = scaled.createGraphics();
+		g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+		g2d.drawImage(source, 0, 0, width, height, null);
+		g2d.dispose();
+		return scaled;
 	}
 
-	private void showMaskedImage(BufferedImage image) {
+	private void showMaskedImage(ImageIcon preview) {
 		JFrame maskedImageFrame = new JFrame("Masked Aadhaar Image");
 		maskedImageFrame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 		maskedImageFrame.setSize(800, 600);
 		maskedImageFrame.setLocationRelativeTo(null);
 
-		JLabel maskedImageLabel = new JLabel(new ImageIcon(image));
+		JLabel maskedImageLabel = new JLabel(preview);
 		maskedImageLabel.setHorizontalAlignment(JLabel.CENTER);
 
 		maskedImageFrame.add(maskedImageLabel);
@@ -315,6 +408,10 @@ System.out.println("aadhaarNumber  =="+aadhaarNumber);
 	}
 
 	public static void main(String[] args) {
+		// Fail here, with the reason, rather than on the first upload
+		Bootstrap.loadNatives();
+		Bootstrap.tessdata();
+
 		SwingUtilities.invokeLater(() -> {
 			AadhaarMaskApp app = new AadhaarMaskApp();
 			app.setVisible(true);
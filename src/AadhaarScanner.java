@@ -0,0 +1,238 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Single-pass scanner for Aadhaar numbers (12 digits) and Virtual IDs (16
+ * digits) in OCR text.
+ *
+ * Digits may be written in groups of four with any short run of spaces or
+ * hyphens between them, or with no spacing at all. Letters OCR commonly
+ * confuses with digits (O/0, l/1, S/5, B/8, ...) are read as digits as long as
+ * they are the minority of a group. Every candidate is checked against the
+ * Verhoeff checksum before it is reported, so dates, phone numbers and other
+ * digit runs are rejected here rather than after localization. The scan keeps
+ * its state in a few fixed-size arrays and allocates only for reported matches.
+ */
+public final class AadhaarScanner {
+
+	private static final int GROUP = 4;
+	private static final int MAX_DIGITS = 16;
+	private static final int MAX_SEPARATORS = 3;
+
+	/** Digit value of each ASCII character, or -1; confusable letters are encoded as 10 + value. */
+	private static final byte[] ASCII_DIGITS = new byte[128];
+
+	static {
+		for (int c = 0; c < ASCII_DIGITS.length; c++) {
+			ASCII_DIGITS[c] = (byte) (c >= '0' && c <= '9' ? c - '0' : -1);
+		}
+		confusable("OoQD", 0);
+		confusable("Il|i", 1);
+		confusable("Zz", 2);
+		confusable("Ss", 5);
+		confusable("Gb", 6);
+		confusable("B", 8);
+		confusable("gq", 9);
+	}
+
+	private static final int[][] VERHOEFF_D = {
+			{ 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 },
+			{ 1, 2, 3, 4, 0, 6, 7, 8, 9, 5 },
+			{ 2, 3, 4, 0, 1, 7, 8, 9, 5, 6 },
+			{ 3, 4, 0, 1, 2, 8, 9, 5, 6, 7 },
+			{ 4, 0, 1, 2, 3, 9, 5, 6, 7, 8 },
+			{ 5, 9, 8, 7, 6, 0, 4, 3, 2, 1 },
+			{ 6, 5, 9, 8, 7, 1, 0, 4, 3, 2 },
+			{ 7, 6, 5, 9, 8, 2, 1, 0, 4, 3 },
+			{ 8, 7, 6, 5, 9, 3, 2, 1, 0, 4 },
+			{ 9, 8, 7, 6, 5, 4, 3, 2, 1, 0 } };
+
+	private static final int[][] VERHOEFF_P = {
+			{ 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 },
+			{ 1, 5, 7, 6, 2, 8, 3, 0, 9, 4 },
+			{ 5, 8, 0, 3, 7, 9, 6, 1, 4, 2 },
+			{ 8, 9, 1, 6, 0, 4, 3, 5, 2, 7 },
+			{ 9, 4, 5, 3, 1, 2, 6, 8, 7, 0 },
+			{ 4, 2, 8, 6, 5, 7, 3, 9, 0, 1 },
+			{ 2, 7, 9, 3, 8, 0, 6, 4, 1, 5 },
+			{ 7, 0, 4, 6, 9, 1, 3, 2, 5, 8 } };
+
+	private AadhaarScanner() {
+	}
+
+	private static void confusable(String letters, int digit) {
+		for (int i = 0; i < letters.length(); i++) {
+			ASCII_DIGITS[letters.charAt(i)] = (byte) (10 + digit);
+		}
+	}
+
+	/** Every valid Aadhaar number and VID in {@code text}, in order of appearance. */
+	public static List<Match> scan(CharSequence text) {
+		List<Match> matches = null;
+
+		// Ring buffers over the last MAX_DIGITS digits of the current run
+		int[] digits = new int[MAX_DIGITS];
+		int[] offsets = new int[MAX_DIGITS];
+		boolean[] chunkStartsGroup = new boolean[MAX_DIGITS / GROUP];
+
+		int runDigits = 0;
+		int groupStart = 0;
+		int groupLength = 0;
+		int groupConfusables = 0;
+		int separators = 0;
+		boolean blocked = false;
+
+		int length = text.length();
+		for (int i = 0; i <= length; i++) {
+			char c = i < length ? text.charAt(i) : '\n';
+			int value = digitValue(c);
+
+			if (value >= 0 && !blocked) {
+				if (groupLength == 0) {
+					groupStart = runDigits;
+				}
+				if (runDigits % GROUP == 0) {
+					chunkStartsGroup[(runDigits / GROUP) % chunkStartsGroup.length] = runDigits == groupStart;
+				}
+				digits[runDigits % MAX_DIGITS] = value % 10;
+				offsets[runDigits % MAX_DIGITS] = i;
+				if (value >= 10) {
+					groupConfusables++;
+				}
+				runDigits++;
+				groupLength++;
+				separators = 0;
+				continue;
+			}
+			if (value >= 0) {
+				continue;
+			}
+
+			boolean separator = c == ' ' || c == '-' || c == '\t' || c == '\u00a0';
+			if (groupLength > 0) {
+				boolean glued = !separator && Character.isLetterOrDigit(c);
+				if (glued || groupLength % GROUP != 0 || groupLength > MAX_DIGITS || groupConfusables * 2 > groupLength) {
+					runDigits = 0;
+				} else {
+					matches = collect(matches, digits, offsets, chunkStartsGroup, runDigits, 3 * GROUP);
+					matches = collect(matches, digits, offsets, chunkStartsGroup, runDigits, 4 * GROUP);
+				}
+				groupLength = 0;
+				groupConfusables = 0;
+			}
+
+			if (separator) {
+				blocked = false;
+				if (++separators > MAX_SEPARATORS) {
+					runDigits = 0;
+				}
+			} else {
+				// Digit-like characters glued to a word ("Bob", "abc1234") never start a group
+				blocked = Character.isLetterOrDigit(c);
+				runDigits = 0;
+				separators = 0;
+			}
+		}
+		return matches == null ? Collections.<Match>emptyList() : matches;
+	}
+
+	/** Checks the candidate of {@code count} digits ending at the current group boundary. */
+	private static List<Match> collect(List<Match> matches, int[] digits, int[] offsets, boolean[] chunkStartsGroup,
+			int runDigits, int count) {
+		int first = runDigits - count;
+		if (first < 0 || !chunkStartsGroup[(first / GROUP) % chunkStartsGroup.length]) {
+			return matches;
+		}
+		// Aadhaar numbers never start with 0 or 1
+		if (count == 3 * GROUP && digits[first % MAX_DIGITS] < 2) {
+			return matches;
+		}
+		int check = 0;
+		for (int i = 0; i < count; i++) {
+			int digit = digits[(runDigits - 1 - i) % MAX_DIGITS];
+			check = VERHOEFF_D[check][VERHOEFF_P[i % 8][digit]];
+		}
+		if (check != 0) {
+			return matches;
+		}
+
+		char[] number = new char[count + count / GROUP - 1];
+		int[] digitOffsets = new int[count];
+		for (int i = 0, n = 0; i < count; i++) {
+			if (i > 0 && i % GROUP == 0) {
+				number[n++] = ' ';
+			}
+			number[n++] = (char) ('0' + digits[(first + i) % MAX_DIGITS]);
+			digitOffsets[i] = offsets[(first + i) % MAX_DIGITS];
+		}
+		if (matches == null) {
+			matches = new ArrayList<>();
+		}
+		matches.add(new Match(new String(number), digitOffsets));
+		return matches;
+	}
+
+	private static int digitValue(char c) {
+		if (c < 128) {
+			return ASCII_DIGITS[c];
+		}
+		return Character.digit(c, 10);
+	}
+
+	/** True if the digits (spaces are ignored) pass the Verhoeff check. */
+	public static boolean isValidChecksum(CharSequence number) {
+		int check = 0;
+		int position = 0;
+		for (int i = number.length() - 1; i >= 0; i--) {
+			char c = number.charAt(i);
+			if (c == ' ') {
+				continue;
+			}
+			if (c < '0' || c > '9') {
+				return false;
+			}
+			check = VERHOEFF_D[check][VERHOEFF_P[position++ % 8][c - '0']];
+		}
+		return position > 0 && check == 0;
+	}
+
+	/** A validated number and where each of its digits sits in the scanned text. */
+	public static final class Match {
+		private final String number;
+		private final int[] digitOffsets;
+
+		Match(String number, int[] digitOffsets) {
+			this.number = number;
+			this.digitOffsets = digitOffsets;
+		}
+
+		/** Normalized number, digits only in groups of four separated by single spaces. */
+		public String getNumber() {
+			return number;
+		}
+
+		public boolean isVid() {
+			return digitOffsets.length == 4 * GROUP;
+		}
+
+		public int getDigitCount() {
+			return digitOffsets.length;
+		}
+
+		/** Offset in the scanned text of the character read as digit {@code index}. */
+		public int getDigitOffset(int index) {
+			return digitOffsets[index];
+		}
+
+		/** Offset of the first digit in the scanned text. */
+		public int getStart() {
+			return digitOffsets[0];
+		}
+
+		/** Offset just past the last digit in the scanned text. */
+		public int getEnd() {
+			return digitOffsets[digitOffsets.length - 1] + 1;
+		}
+	}
+}
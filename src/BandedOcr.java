@@ -0,0 +1,227 @@
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.sourceforge.tess4j.ITessAPI;
+import net.sourceforge.tess4j.ITesseract;
+import net.sourceforge.tess4j.TesseractException;
+import net.sourceforge.tess4j.Word;
+
+/**
+ * Recognizes a tall page as horizontal bands on a fork/join pool, so a single
+ * document uses every core instead of one long Tesseract call.
+ *
+ * Consecutive bands overlap so that a text line cut by one band edge is whole
+ * in the neighbouring band. Each band owns the words whose centre lies between
+ * the midpoints of its overlaps; words cut by a band edge, and any remaining
+ * word repeated with the same text and an overlapping box, are dropped. Bands
+ * borrow from an engine pool of their own, one engine per worker, since
+ * Tesseract instances are not thread-safe and callers' engines are already in
+ * use.
+ *
+ * When the caller is interrupted, bands that have not started are skipped; a
+ * band already inside Tesseract runs to the end of that call.
+ */
+public class BandedOcr {
+
+	public static final int DEFAULT_BAND_HEIGHT = 1000;
+	public static final int DEFAULT_OVERLAP = 160;
+
+	private final ForkJoinPool pool;
+	private final OcrEnginePool engines;
+	private final int bandHeight;
+	private final int overlap;
+
+	/** Engines use the {@link Bootstrap} data directory and language. */
+	public BandedOcr(int parallelism) {
+		this(parallelism, new OcrEnginePool(parallelism), DEFAULT_BAND_HEIGHT, DEFAULT_OVERLAP);
+	}
+
+	public BandedOcr(int parallelism, String datapath, String language, int bandHeight, int overlap) {
+		this(parallelism, new OcrEnginePool(parallelism, datapath, language), bandHeight, overlap);
+	}
+
+	private BandedOcr(int parallelism, OcrEnginePool engines, int bandHeight, int overlap) {
+		if (overlap < 0 || overlap >= bandHeight / 2) {
+			throw new IllegalArgumentException("Overlap must be below half the band height: " + overlap);
+		}
+		this.pool = new ForkJoinPool(parallelism);
+		this.bandHeight = bandHeight;
+		this.overlap = overlap;
+		this.engines = engines;
+	}
+
+	/** True when the page is tall enough to yield at least two bands. */
+	public boolean shouldSplit(BufferedImage image) {
+		return image.getHeight() >= 2 * bandHeight - overlap;
+	}
+
+	/** Words of the whole page in page coordinates and reading order. */
+	public List<Word> getWords(BufferedImage image, OcrProfile profile) throws TesseractException {
+		int step = bandHeight - overlap;
+		int count = Math.max(1, (image.getHeight() - overlap + step - 1) / step);
+		List<List<Word>> bands = new ArrayList<>(Collections.<List<Word>>nCopies(count, null));
+		AtomicBoolean cancelled = new AtomicBoolean();
+		ForkJoinTask<Void> task = pool.submit(new BandTask(image, profile, bands, cancelled, 0, count));
+		try {
+			task.get();
+		} catch (InterruptedException ex) {
+			// Fork/join workers are not interrupted; the flag stops the bands not yet started
+			cancelled.set(true);
+			task.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Masking cancelled");
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof BandFailure) {
+				throw ((BandFailure) cause).getCause();
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new TesseractException(cause);
+		}
+		Metrics.increment("ocr_banded_pages_total", 1);
+		Metrics.increment("ocr_bands_total", count);
+		return merge(bands);
+	}
+
+	public void shutdown() {
+		pool.shutdown();
+		engines.shutdown();
+	}
+
+	/** Concatenates the bands in order, dropping words already taken from the band above. */
+	private static List<Word> merge(List<List<Word>> bands) {
+		List<Word> merged = new ArrayList<>();
+		int previousStart = 0;
+		for (List<Word> band : bands) {
+			int start = merged.size();
+			for (Word word : band) {
+				if (!isDuplicate(word, merged, previousStart, start)) {
+					merged.add(word);
+				}
+			}
+			previousStart = start;
+		}
+		return merged;
+	}
+
+	private static boolean isDuplicate(Word word, List<Word> merged, int from, int to) {
+		Rectangle box = word.getBoundingBox();
+		for (int i = from; i < to; i++) {
+			Word other = merged.get(i);
+			if (other.getText().equals(word.getText()) && other.getBoundingBox().intersects(box)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Splits the band range in half until one band is left, then OCRs that band. */
+	private final class BandTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final BufferedImage image;
+		private final OcrProfile profile;
+		private final List<List<Word>> bands;
+		private final AtomicBoolean cancelled;
+		private final int from;
+		private final int to;
+
+		BandTask(BufferedImage image, OcrProfile profile, List<List<Word>> bands, AtomicBoolean cancelled, int from,
+				int to) {
+			this.image = image;
+			this.profile = profile;
+			this.bands = bands;
+			this.cancelled = cancelled;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new BandTask(image, profile, bands, cancelled, from, middle),
+						new BandTask(image, profile, bands, cancelled, middle, to));
+				return;
+			}
+			if (cancelled.get()) {
+				return;
+			}
+			try {
+				bands.set(from, recognizeBand(from, bands.size()));
+			} catch (TesseractException ex) {
+				throw new BandFailure(ex);
+			}
+		}
+
+		private List<Word> recognizeBand(int index, int count) throws TesseractException {
+			int step = bandHeight - overlap;
+			int height = image.getHeight();
+			int top = index * step;
+			int bottom = index == count - 1 ? height : Math.min(height, top + bandHeight);
+			int ownTop = index == 0 ? 0 : top + overlap / 2;
+			int ownBottom = index == count - 1 ? height : top + step + overlap / 2;
+
+			List<Word> found;
+			ITesseract tesseract = borrowEngine();
+			try {
+				profile.apply(tesseract);
+				found = tesseract.getWords(image.getSubimage(0, top, image.getWidth(), bottom - top),
+						ITessAPI.TessPageIteratorLevel.RIL_WORD);
+			} finally {
+				engines.release(tesseract);
+			}
+			if (found == null) {
+				throw new TesseractException("Tesseract returned no result");
+			}
+
+			List<Word> owned = new ArrayList<>(found.size());
+			for (Word word : found) {
+				Rectangle box = word.getBoundingBox();
+				boolean cutAbove = index > 0 && box.y <= 0;
+				boolean cutBelow = index < count - 1 && box.y + box.height >= bottom - top;
+				int centre = top + box.y + box.height / 2;
+				if (cutAbove || cutBelow || centre < ownTop || centre >= ownBottom) {
+					continue;
+				}
+				owned.add(new Word(word.getText(), word.getConfidence(),
+						new Rectangle(box.x, box.y + top, box.width, box.height)));
+			}
+			return owned;
+		}
+
+		private ITesseract borrowEngine() {
+			try {
+				return engines.borrow();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new CancellationException("Masking cancelled");
+			}
+		}
+	}
+
+	/** Carries a checked Tesseract failure out of a fork/join task. */
+	private static final class BandFailure extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		BandFailure(TesseractException cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized TesseractException getCause() {
+			return (TesseractException) super.getCause();
+		}
+	}
+}
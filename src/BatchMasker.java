@@ -0,0 +1,183 @@
+import java.io.File;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import net.sourceforge.tess4j.ITesseract;
+
+/**
+ * Headless batch mode: masks every image in an input directory on a worker pool
+ * sized to the core count and prints a throughput summary at the end.
+ *
+ * Usage: BatchMasker &lt;inputDir&gt; &lt;outputDir&gt; [threads]
+ */
+public class BatchMasker {
+
+	private static final String[] IMAGE_EXTENSIONS = { ".png", ".jpg", ".jpeg", ".bmp", ".gif", ".tif", ".tiff", ".pdf" };
+
+	// No PDF reader is bundled; PDFs are only picked up once an ImageIO plugin for them is on the class path
+	private static final boolean PDF_READABLE = ImageIO.getImageReadersBySuffix("pdf").hasNext();
+
+	private final MaskPipeline pipeline = new MaskPipeline();
+	private final PyramidMasker pyramid = new PyramidMasker(pipeline);
+	private final OcrEnginePool engines;
+	private final int threads;
+
+	public BatchMasker(int threads) {
+		this.threads = threads;
+		this.engines = new OcrEnginePool(threads);
+	}
+
+	public void run(File inputDir, File outputDir) throws InterruptedException {
+		File[] inputs = inputDir.listFiles(BatchMasker::isImageFile);
+		if (inputs == null) {
+			throw new IllegalArgumentException("Not a readable directory: " + inputDir);
+		}
+		if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+			throw new IllegalArgumentException("Cannot create output directory: " + outputDir);
+		}
+
+		long[] latencies = new long[inputs.length];
+		AtomicInteger masked = new AtomicInteger();
+		AtomicInteger failed = new AtomicInteger();
+
+		// Bound the number of queued files so a huge directory does not pile up tasks
+		Semaphore inFlight = new Semaphore(threads * 2);
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		OutputWriter writer = new OutputWriter(Math.max(1, threads / 4), threads, OutputWriter.Format.configured());
+		long start = System.nanoTime();
+
+		for (int i = 0; i < inputs.length; i++) {
+			final int index = i;
+			final File input = inputs[i];
+			inFlight.acquire();
+			workers.execute(() -> {
+				long fileStart = System.nanoTime();
+				try {
+					maskFile(input, outputDir, writer, masked, failed);
+				} catch (Exception ex) {
+					failed.incrementAndGet();
+					System.err.println("Failed to mask " + input.getName() + ": " + ex);
+				} finally {
+					latencies[index] = System.nanoTime() - fileStart;
+					inFlight.release();
+				}
+			});
+		}
+
+		workers.shutdown();
+		workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		writer.awaitCompletion();
+		long elapsed = System.nanoTime() - start;
+		engines.shutdown();
+
+		printSummary(inputs.length, masked.get(), failed.get(), elapsed, latencies);
+	}
+
+	/** Counts the file as masked once its output is written, or as failed if the write fails. */
+	private void maskFile(File input, File outputDir, OutputWriter writer, AtomicInteger masked,
+			AtomicInteger failed) throws Exception {
+		if (MultiPageMasker.isMultiPageFormat(input)) {
+			if (maskDocument(input, outputDir)) {
+				masked.incrementAndGet();
+			}
+			return;
+		}
+
+		// Large scans are detected on a subsampled proxy; decode is timed inside
+		MaskResult result;
+		ITesseract tesseract = engines.borrow();
+		try {
+			result = pyramid.mask(input, tesseract);
+		} finally {
+			engines.release(tesseract);
+		}
+
+		// Encoding overlaps with the OCR of the next file; a failed write still counts as failed
+		writer.submit(result.getImage(), outputDir, baseName(input) + "_masked").whenComplete((output, error) -> {
+			if (error != null) {
+				failed.incrementAndGet();
+				System.err.println("Failed to write " + input.getName() + ": " + error);
+			} else if (result.isMasked()) {
+				masked.incrementAndGet();
+			}
+		});
+	}
+
+	/** Streams a multi-page TIFF or PDF page by page into a multi-page TIFF. */
+	private boolean maskDocument(File input, File outputDir) throws Exception {
+		MultiPageMasker.Summary summary;
+		ITesseract tesseract = engines.borrow();
+		try {
+			File output = OutputLocation.unique(outputDir, baseName(input) + "_masked", "tif");
+			summary = new MultiPageMasker(pipeline).mask(input, output, tesseract);
+		} finally {
+			engines.release(tesseract);
+		}
+		Metrics.increment("aadhaar_pages_total", summary.getPages());
+		return summary.getMaskedPages() > 0;
+	}
+
+	static void printSummary(int files, int masked, int failed, long elapsedNanos, long[] latencies) {
+		long[] sorted = latencies.clone();
+		Arrays.sort(sorted);
+		double seconds = elapsedNanos / 1e9;
+
+		System.out.println(String.format(Locale.ROOT, "Processed %d files in %.2f s (%d masked, %d failed)", files, seconds,
+				masked, failed));
+		System.out.println(String.format(Locale.ROOT, "Throughput: %.2f files/sec", seconds > 0 ? files / seconds : 0.0));
+		System.out.println(String.format(Locale.ROOT, "Latency per file: p50=%.1f ms p99=%.1f ms",
+				percentile(sorted, 50) / 1e6, percentile(sorted, 99) / 1e6));
+		System.out.println(Metrics.summaryLine());
+	}
+
+	static long percentile(long[] sorted, double percentile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+	}
+
+	static boolean isImageFile(File file) {
+		if (!file.isFile()) {
+			return false;
+		}
+		String name = file.getName().toLowerCase(Locale.ROOT);
+		if (name.endsWith(".pdf") && !PDF_READABLE) {
+			System.err.println("Skipping " + file.getName() + ": no ImageIO reader for PDF on the class path");
+			return false;
+		}
+		for (String extension : IMAGE_EXTENSIONS) {
+			if (name.endsWith(extension)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String baseName(File file) {
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		return dot > 0 ? name.substring(0, dot) : name;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length < 2) {
+			System.err.println("Usage: BatchMasker <inputDir> <outputDir> [threads]");
+			System.exit(2);
+		}
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		Bootstrap.loadNatives();
+		Metrics.startPeriodicLog(60);
+
+		new BatchMasker(threads).run(new File(args[0]), new File(args[1]));
+	}
+}
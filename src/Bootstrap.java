@@ -0,0 +1,215 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Core;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.tess4j.ITesseract;
+import net.sourceforge.tess4j.TesseractException;
+
+/**
+ * Start-up shared by every entry point: finds and loads the native libraries
+ * once, resolves the Tesseract data directory, and warms the pipeline on
+ * {@link SyntheticCard}s so the first real document does not pay for class
+ * loading, model loading and cold JIT. Models stay loaded because engines are
+ * {@link TessEngine}s; a pool warm-up loads them into every engine.
+ *
+ * Settings are read from system properties first, then environment variables:
+ * <ul>
+ * <li>{@code aadhaar.tessdata} / {@code AADHAAR_TESSDATA}, then
+ * {@code TESSDATA_PREFIX}, then the usual install locations</li>
+ * <li>{@code aadhaar.ocr.language} / {@code AADHAAR_OCR_LANGUAGE}, default {@code eng}</li>
+ * <li>{@code aadhaar.opencv.library} / {@code AADHAAR_OPENCV_LIBRARY}: absolute path of
+ * the OpenCV JNI library; otherwise it is looked up on {@code java.library.path}</li>
+ * <li>{@code aadhaar.warmup.passes} / {@code AADHAAR_WARMUP_PASSES}, default 3; 0 skips warm-up</li>
+ * </ul>
+ *
+ * {@link #ready()} logs the time from JVM start and exports it as
+ * {@code startup_time_to_ready_millis}.
+ */
+public final class Bootstrap {
+
+	private static final Logger log = LoggerFactory.getLogger(Bootstrap.class);
+
+	public static final String DEFAULT_LANGUAGE = "eng";
+	public static final int DEFAULT_WARMUP_PASSES = 3;
+
+	// Warm-up cards differ in size, so the OCR cache cannot answer the later passes
+	private static final int[][] WARMUP_SIZES = { { 1000, 630 }, { 1200, 756 }, { 856, 540 } };
+
+	private static volatile String tessdata;
+	private static boolean nativesLoaded;
+	private static long nativesMillis;
+	private static long warmUpMillis;
+
+	private Bootstrap() {
+	}
+
+	/** Loads the OpenCV JNI library; later calls return at once. */
+	public static synchronized void loadNatives() {
+		if (nativesLoaded) {
+			return;
+		}
+		long start = System.nanoTime();
+		String library = setting("aadhaar.opencv.library", "AADHAAR_OPENCV_LIBRARY");
+		if (library != null) {
+			System.load(new File(library).getAbsolutePath());
+		} else {
+			System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+		}
+		nativesLoaded = true;
+		nativesMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		log.info("Loaded OpenCV {} in {} ms", Core.VERSION, nativesMillis);
+	}
+
+	/** Like {@link #loadNatives()}, but reports a missing library instead of throwing. */
+	public static boolean tryLoadNatives() {
+		try {
+			loadNatives();
+			return true;
+		} catch (UnsatisfiedLinkError ex) {
+			log.warn("OpenCV natives not available: {}", ex.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * The tessdata directory: the configured one, or the first install location
+	 * that holds the traineddata file for {@link #language()}.
+	 */
+	public static String tessdata() {
+		String path = tessdata;
+		if (path == null) {
+			path = resolveTessdata();
+			tessdata = path;
+		}
+		return path;
+	}
+
+	public static String language() {
+		String language = setting("aadhaar.ocr.language", "AADHAAR_OCR_LANGUAGE");
+		return language != null ? language : DEFAULT_LANGUAGE;
+	}
+
+	/** A {@link TessEngine} for the resolved data directory and language. */
+	public static TessEngine newEngine() {
+		return new TessEngine(tessdata(), language());
+	}
+
+	/**
+	 * Runs the pipeline end to end on synthetic cards with one pooled engine and
+	 * loads the models into every other engine of the pool, so no request is the
+	 * first on its engine. A warm-up that finds no number points at a wrong or
+	 * incomplete tessdata directory and is logged as a warning.
+	 */
+	public static void warmUp(MaskPipeline pipeline, OcrEnginePool engines)
+			throws InterruptedException, TesseractException {
+		if (warmUpPasses() == 0) {
+			return;
+		}
+		long start = System.nanoTime();
+		List<ITesseract> borrowed = new ArrayList<>(engines.size());
+		try {
+			for (int i = 0; i < engines.size(); i++) {
+				borrowed.add(engines.borrow());
+			}
+			warmUp(pipeline, borrowed.get(0));
+			BufferedImage card = SyntheticCard.render(320, 200);
+			for (ITesseract tesseract : borrowed.subList(1, borrowed.size())) {
+				// One call per engine mode the cascades use; the pipeline's OCR cache would answer a repeated card
+				for (OcrProfile profile : Arrays.asList(OcrProfile.DIGITS_LINE, OcrProfile.FULL_PAGE)) {
+					profile.apply(tesseract);
+					tesseract.doOCR(card);
+				}
+			}
+		} finally {
+			for (ITesseract tesseract : borrowed) {
+				engines.release(tesseract);
+			}
+		}
+		warmUpMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		log.info("Models loaded into {} engines; warm-up took {} ms", engines.size(), warmUpMillis);
+	}
+
+	/** Runs the pipeline end to end on synthetic cards, which also loads the models into this engine. */
+	public static void warmUp(MaskPipeline pipeline, ITesseract tesseract) throws TesseractException {
+		int passes = warmUpPasses();
+		long start = System.nanoTime();
+		int found = 0;
+		for (int i = 0; i < passes; i++) {
+			int[] size = WARMUP_SIZES[i % WARMUP_SIZES.length];
+			BufferedImage card = SyntheticCard.render(size[0], size[1]);
+			if (pipeline.process(tesseract, card).isMasked()) {
+				found++;
+			}
+		}
+		warmUpMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		if (passes > 0 && found == 0) {
+			log.warn("Warm-up did not find the sample number; check the tessdata directory {}", tessdata());
+		} else {
+			log.info("Warm-up: {} passes in {} ms", passes, warmUpMillis);
+		}
+	}
+
+	/** Records that the process can take work, and how long that took since the JVM started. */
+	public static long ready() {
+		long millis = ManagementFactory.getRuntimeMXBean().getUptime();
+		Metrics.gauge("startup_time_to_ready_millis", () -> millis);
+		log.info("Ready in {} ms (natives {} ms, warm-up {} ms)",
+				new Object[] { millis, nativesMillis, warmUpMillis });
+		return millis;
+	}
+
+	private static int warmUpPasses() {
+		String passes = setting("aadhaar.warmup.passes", "AADHAAR_WARMUP_PASSES");
+		return passes != null ? Math.max(0, Integer.parseInt(passes)) : DEFAULT_WARMUP_PASSES;
+	}
+
+	private static String resolveTessdata() {
+		String configured = setting("aadhaar.tessdata", "AADHAAR_TESSDATA");
+		if (configured != null) {
+			return configured;
+		}
+		List<String> candidates = new ArrayList<>();
+		String prefix = System.getenv("TESSDATA_PREFIX");
+		if (prefix != null && !prefix.isEmpty()) {
+			// Tesseract 4+ points the variable at tessdata itself, 3.x at its parent
+			candidates.add(prefix);
+			candidates.add(new File(prefix, "tessdata").getPath());
+		}
+		String localAppData = System.getenv("LOCALAPPDATA");
+		if (localAppData != null) {
+			candidates.add(localAppData + "\\Programs\\Tesseract-OCR\\tessdata");
+		}
+		candidates.add("C:\\Program Files\\Tesseract-OCR\\tessdata");
+		candidates.add("/usr/share/tesseract-ocr/5/tessdata");
+		candidates.add("/usr/share/tesseract-ocr/4.00/tessdata");
+		candidates.add("/usr/share/tessdata");
+		candidates.add("/usr/local/share/tessdata");
+		candidates.add("/opt/homebrew/share/tessdata");
+
+		String traineddata = language().split("\\+")[0] + ".traineddata";
+		for (String candidate : candidates) {
+			if (new File(candidate, traineddata).isFile()) {
+				log.info("Using tessdata at {}", candidate);
+				return candidate;
+			}
+		}
+		throw new IllegalStateException("No tessdata directory with " + traineddata
+				+ " found; set -Daadhaar.tessdata or AADHAAR_TESSDATA");
+	}
+
+	static String setting(String property, String environment) {
+		String value = System.getProperty(property);
+		if (value == null || value.isEmpty()) {
+			value = System.getenv(environment);
+		}
+		return value == null || value.isEmpty() ? null : value;
+	}
+}
@@ -0,0 +1,203 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Estimates document skew from the dominant direction of straight edges
+ * (Hough line segments on a downscaled Canny map) and straightens the image
+ * only when the skew is large enough to hurt OCR.
+ */
+public class Deskew {
+
+	public static final double DEFAULT_THRESHOLD_DEGREES = 0.5;
+
+	private static final int WORK_WIDTH = 800;
+	private static final double MAX_SKEW_DEGREES = 30.0;
+	private static final int MIN_LINES = 3;
+
+	private final double thresholdDegrees;
+
+	public Deskew() {
+		this(DEFAULT_THRESHOLD_DEGREES);
+	}
+
+	public Deskew(double thresholdDegrees) {
+		this.thresholdDegrees = thresholdDegrees;
+	}
+
+	/**
+	 * Returns the skew of the text lines in degrees, positive when lines slope
+	 * downwards to the right, or 0 when there is not enough evidence.
+	 */
+	public double estimateAngle(Mat image) {
+		int count;
+		int[] segments;
+		try (MatScope scope = new MatScope()) {
+			Mat gray = image;
+			if (image.channels() == 3) {
+				gray = scope.acquire(image.rows(), image.cols(), CvType.CV_8UC1);
+				Imgproc.cvtColor(image, gray, Imgproc.COLOR_BGR2GRAY);
+			} else if (image.channels() == 4) {
+				gray = scope.acquire(image.rows(), image.cols(), CvType.CV_8UC1);
+				Imgproc.cvtColor(image, gray, Imgproc.COLOR_BGRA2GRAY);
+			}
+
+			double scale = Math.min(1.0, (double) WORK_WIDTH / gray.cols());
+			Mat work = gray;
+			if (scale < 1.0) {
+				Size size = new Size(Math.round(gray.cols() * scale), Math.round(gray.rows() * scale));
+				work = scope.acquire((int) size.height, (int) size.width, CvType.CV_8UC1);
+				Imgproc.resize(gray, work, size, 0, 0, Imgproc.INTER_AREA);
+			}
+
+			Mat edges = scope.acquire(work.rows(), work.cols(), CvType.CV_8UC1);
+			Imgproc.Canny(work, edges, 50, 150);
+
+			Mat lines = scope.mat();
+			Imgproc.HoughLinesP(edges, lines, 1, Math.PI / 180, 80, work.cols() / 8.0, 10);
+
+			count = lines.rows();
+			if (count < MIN_LINES) {
+				return 0;
+			}
+			segments = new int[count * 4];
+			lines.get(0, 0, segments);
+		}
+
+		// Length-weighted median of the near-horizontal segment angles
+		List<double[]> angles = new ArrayList<>();
+		double totalLength = 0;
+		for (int i = 0; i < count; i++) {
+			double dx = segments[i * 4 + 2] - segments[i * 4];
+			double dy = segments[i * 4 + 3] - segments[i * 4 + 1];
+			double angle = Math.toDegrees(Math.atan2(dy, dx));
+			if (angle > 90) {
+				angle -= 180;
+			} else if (angle <= -90) {
+				angle += 180;
+			}
+			if (Math.abs(angle) <= MAX_SKEW_DEGREES) {
+				double length = Math.hypot(dx, dy);
+				angles.add(new double[] { angle, length });
+				totalLength += length;
+			}
+		}
+		if (angles.size() < MIN_LINES) {
+			return 0;
+		}
+
+		Collections.sort(angles, (a, b) -> Double.compare(a[0], b[0]));
+		double half = totalLength / 2;
+		for (double[] angle : angles) {
+			half -= angle[1];
+			if (half <= 0) {
+				return angle[0];
+			}
+		}
+		return angles.get(angles.size() - 1)[0];
+	}
+
+	public Result apply(BufferedImage image, Mat frame) {
+		double angle = estimateAngle(frame);
+		if (Math.abs(angle) < thresholdDegrees) {
+			return new Result(image, 0, new AffineTransform());
+		}
+		return rotate(image, angle);
+	}
+
+	/**
+	 * Rotates by {@code -angle} onto a canvas large enough to hold the whole
+	 * rotated page, filling the uncovered corners with white.
+	 */
+	public static Result rotate(BufferedImage image, double angle) {
+		double radians = Math.toRadians(-angle);
+		int width = image.getWidth();
+		int height = image.getHeight();
+		double sin = Math.abs(Math.sin(radians));
+		double cos = Math.abs(Math.cos(radians));
+		int rotatedWidth = (int) Math.ceil(width * cos + height * sin);
+		int rotatedHeight = (int) Math.ceil(width * sin + height * cos);
+
+		AffineTransform transform = new AffineTransform();
+		transform.translate((rotatedWidth - width) / 2.0, (rotatedHeight - height) / 2.0);
+		transform.rotate(radians, width / 2.0, height / 2.0);
+
+		int type = image.getColorModel().getNumColorComponents() == 1 ? BufferedImage.TYPE_BYTE_GRAY
+				: BufferedImage.TYPE_3BYTE_BGR;
+		BufferedImage rotated = new BufferedImage(rotatedWidth, rotatedHeight, type);
+		Graphics2D g2d = rotated.createGraphics();
+		g2d.setColor(Color.WHITE);
+		g2d.fillRect(0, 0, rotatedWidth, rotatedHeight);
+		g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g2d.drawImage(image, transform, null);
+		g2d.dispose();
+
+		return new Result(rotated, angle, transform);
+	}
+
+	public static class Result {
+		private final BufferedImage image;
+		private final double angle;
+		private final AffineTransform inverse;
+
+		Result(BufferedImage image, double angle, AffineTransform transform) {
+			this.image = image;
+			this.angle = angle;
+			try {
+				this.inverse = transform.createInverse();
+			} catch (NoninvertibleTransformException ex) {
+				throw new IllegalStateException(ex);
+			}
+		}
+
+		/** The straightened image, or the input itself when no rotation was needed. */
+		public BufferedImage getImage() {
+			return image;
+		}
+
+		public double getAngle() {
+			return angle;
+		}
+
+		public boolean isRotated() {
+			return angle != 0;
+		}
+
+		public Point2D toSource(double x, double y) {
+			return inverse.transform(new Point2D.Double(x, y), null);
+		}
+
+		/** Maps a box found in the straightened image to a bounding box in the source. */
+		public Rect toSource(Rect rect) {
+			if (!isRotated()) {
+				return rect;
+			}
+			double[] corners = { rect.x, rect.y, rect.x + rect.width, rect.y, rect.x, rect.y + rect.height,
+					rect.x + rect.width, rect.y + rect.height };
+			inverse.transform(corners, 0, corners, 0, 4);
+			double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+			for (int i = 0; i < corners.length; i += 2) {
+				minX = Math.min(minX, corners[i]);
+				maxX = Math.max(maxX, corners[i]);
+				minY = Math.min(minY, corners[i + 1]);
+				maxY = Math.max(maxY, corners[i + 1]);
+			}
+			int left = (int) Math.floor(minX);
+			int top = (int) Math.floor(minY);
+			return new Rect(left, top, (int) Math.ceil(maxX) - left, (int) Math.ceil(maxY) - top);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.opencv.core.Rect;
+
+/**
+ * Where the Aadhaar numbers were found in an image, before anything is masked.
+ */
+public class Detection {
+
+	private final String aadhaarNumber;
+	private final List<Rect> regions;
+	private final float confidence;
+	private final List<Rect> otherRegions;
+
+	public Detection(String aadhaarNumber, List<Rect> regions, float confidence) {
+		this(aadhaarNumber, regions, confidence, Collections.<Rect>emptyList());
+	}
+
+	/** @param otherRegions regions found by the {@link RegionDetector}s, such as the QR code */
+	public Detection(String aadhaarNumber, List<Rect> regions, float confidence, List<Rect> otherRegions) {
+		this.aadhaarNumber = aadhaarNumber;
+		this.regions = Collections.unmodifiableList(regions);
+		this.confidence = confidence;
+		this.otherRegions = Collections.unmodifiableList(otherRegions);
+	}
+
+	public static Detection notLocated(String aadhaarNumber) {
+		return new Detection(aadhaarNumber, Collections.<Rect>emptyList(), 0);
+	}
+
+	/** First number found; further occurrences only contribute regions. */
+	public String getAadhaarNumber() {
+		return aadhaarNumber;
+	}
+
+	/** Regions to mask, in the coordinates of the image that was analysed. */
+	public List<Rect> getRegions() {
+		return regions;
+	}
+
+	/** Regions from the other detectors; masked whether or not a number was found. */
+	public List<Rect> getOtherRegions() {
+		return otherRegions;
+	}
+
+	/** Same detection with the other detectors' regions attached. */
+	public Detection withOtherRegions(List<Rect> otherRegions) {
+		return new Detection(aadhaarNumber, regions, confidence, otherRegions);
+	}
+
+	/** Region of the first number found, or null when none was located. */
+	public Rect getAadhaarRect() {
+		return regions.isEmpty() ? null : regions.get(0);
+	}
+
+	/** Lowest Tesseract word confidence (0-100) among the located regions; 0 when not located. */
+	public float getConfidence() {
+		return confidence;
+	}
+
+	public boolean isNumberFound() {
+		return aadhaarNumber != null && aadhaarNumber.length() >= 9;
+	}
+
+	public boolean isLocated() {
+		return !regions.isEmpty();
+	}
+
+	/** Same detection with the regions scaled and shifted into another coordinate space. */
+	public Detection transformed(double scale, int offsetX, int offsetY) {
+		if (regions.isEmpty() && otherRegions.isEmpty()) {
+			return this;
+		}
+		return new Detection(aadhaarNumber, transform(regions, scale, offsetX, offsetY), confidence,
+				transform(otherRegions, scale, offsetX, offsetY));
+	}
+
+	private static List<Rect> transform(List<Rect> regions, double scale, int offsetX, int offsetY) {
+		List<Rect> mapped = new ArrayList<>(regions.size());
+		for (Rect rect : regions) {
+			int left = (int) Math.floor(rect.x * scale) + offsetX;
+			int top = (int) Math.floor(rect.y * scale) + offsetY;
+			int right = (int) Math.ceil((rect.x + rect.width) * scale) + offsetX;
+			int bottom = (int) Math.ceil((rect.y + rect.height) * scale) + offsetY;
+			mapped.add(new Rect(left, top, right - left, bottom - top));
+		}
+		return mapped;
+	}
+}
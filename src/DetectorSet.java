@@ -0,0 +1,147 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.opencv.core.Rect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The detectors that run next to the number localizer. {@link MaskPipeline}
+ * starts them on a shared {@link Frame} before it begins OCR and collects their
+ * regions afterwards, so a page takes as long as its slowest detector rather
+ * than the sum of all of them, and everything is masked in one pass.
+ *
+ * A detector that fails is logged and counted under
+ * {@code detector_failures_total}; the number is still masked.
+ */
+public final class DetectorSet {
+
+	private static final Logger log = LoggerFactory.getLogger(DetectorSet.class);
+
+	public static final DetectorSet NONE = new DetectorSet(Collections.<RegionDetector>emptyList(), null);
+
+	private final List<RegionDetector> detectors;
+	private final ExecutorService executor;
+
+	public DetectorSet(List<RegionDetector> detectors, ExecutorService executor) {
+		this.detectors = new ArrayList<>(detectors);
+		this.executor = executor;
+	}
+
+	/**
+	 * Detectors named in {@code aadhaar.detectors} / {@code AADHAAR_DETECTORS}
+	 * (comma-separated: {@code qr}, {@code photo}, or {@code none}), by default
+	 * {@code qr}. The photo detector needs a face cascade file in
+	 * {@code aadhaar.detector.photo.cascade} / {@code AADHAAR_PHOTO_CASCADE}.
+	 */
+	public static DetectorSet configured() {
+		String spec = Bootstrap.setting("aadhaar.detectors", "AADHAAR_DETECTORS");
+		List<RegionDetector> detectors = new ArrayList<>();
+		for (String name : (spec != null ? spec : "qr").split(",")) {
+			name = name.trim().toLowerCase(Locale.ROOT);
+			if (name.equals("qr")) {
+				detectors.add(new QrRegionDetector());
+			} else if (name.equals("photo")) {
+				String cascade = Bootstrap.setting("aadhaar.detector.photo.cascade", "AADHAAR_PHOTO_CASCADE");
+				if (cascade == null) {
+					throw new IllegalArgumentException("The photo detector needs aadhaar.detector.photo.cascade");
+				}
+				detectors.add(new PhotoRegionDetector(cascade));
+			} else if (!name.isEmpty() && !name.equals("none")) {
+				throw new IllegalArgumentException("Unknown detector: " + name);
+			}
+		}
+		if (detectors.isEmpty()) {
+			return NONE;
+		}
+		// Fixed threads that never time out, so each detector's per-thread native state is made once per thread
+		return new DetectorSet(detectors, Executors.newFixedThreadPool(detectors.size(), runnable -> {
+			Thread thread = new Thread(runnable, "detector");
+			thread.setDaemon(true);
+			return thread;
+		}));
+	}
+
+	public List<RegionDetector> getDetectors() {
+		return Collections.unmodifiableList(detectors);
+	}
+
+	/** Starts every detector on the frame; the frame must stay open until {@link Pending#await()} returns. */
+	public Pending start(Frame frame) {
+		List<Future<List<Rect>>> futures = new ArrayList<>(detectors.size());
+		for (RegionDetector detector : detectors) {
+			futures.add(executor.submit(() -> {
+				Metrics.Stopwatch watch = Metrics.stopwatch();
+				List<Rect> regions = detector.detect(frame);
+				watch.lap("detector." + detector.getName());
+				return regions;
+			}));
+		}
+		return new Pending(futures);
+	}
+
+	/** Detectors started on one frame. */
+	public final class Pending {
+		private final List<Future<List<Rect>>> futures;
+
+		private Pending(List<Future<List<Rect>>> futures) {
+			this.futures = futures;
+		}
+
+		/** Waits for every detector and returns all regions they found. */
+		public List<Rect> await() {
+			List<Rect> regions = new ArrayList<>();
+			for (int i = 0; i < futures.size(); i++) {
+				String name = detectors.get(i).getName();
+				try {
+					List<Rect> found = getUninterruptibly(futures.get(i));
+					regions.addAll(found);
+					Metrics.increment("detector_regions_total{detector=\"" + name + "\"}", found.size());
+				} catch (ExecutionException ex) {
+					Metrics.increment("detector_failures_total{detector=\"" + name + "\"}", 1);
+					log.warn("Detector {} failed", name, ex.getCause());
+				}
+			}
+			MaskPipeline.checkInterrupted();
+			return regions;
+		}
+
+		/** Waits for every detector without looking at the results, so the frame can be closed. */
+		void awaitQuietly() {
+			for (Future<List<Rect>> future : futures) {
+				try {
+					getUninterruptibly(future);
+				} catch (ExecutionException ignored) {
+					// The caller is already failing for another reason
+				}
+			}
+		}
+
+		/**
+		 * An interrupt cannot cut the wait short, since the detector is still
+		 * reading the frame; it is restored for the caller afterwards.
+		 */
+		private List<Rect> getUninterruptibly(Future<List<Rect>> future) throws ExecutionException {
+			boolean interrupted = false;
+			try {
+				while (true) {
+					try {
+						return future.get();
+					} catch (InterruptedException ex) {
+						interrupted = true;
+					}
+				}
+			} finally {
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+}
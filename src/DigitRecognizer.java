@@ -0,0 +1,255 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import net.sourceforge.tess4j.Word;
+
+/**
+ * Reads the digits of a number strip without Tesseract. Glyphs are segmented
+ * with connected components and classified by nearest neighbour against
+ * templates rendered from the fonts cards are printed in, using normalized
+ * correlation. A strip is only read when every glyph matches confidently;
+ * otherwise it yields nothing and the caller falls back to Tesseract.
+ *
+ * Immutable after construction and safe to share between threads.
+ */
+public class DigitRecognizer {
+
+	private static final int CELL_WIDTH = 16;
+	private static final int CELL_HEIGHT = 24;
+	private static final int TEMPLATE_POINT_SIZE = 48;
+
+	/** Correlation below which a glyph is rejected, and the margin it must keep over other digits. */
+	private static final double MIN_SCORE = 0.70;
+	private static final double MIN_MARGIN = 0.04;
+
+	private static final Scalar ZERO = new Scalar(0);
+
+	private static final Font[] FONTS = { new Font(Font.SANS_SERIF, Font.BOLD, TEMPLATE_POINT_SIZE),
+			new Font(Font.SANS_SERIF, Font.PLAIN, TEMPLATE_POINT_SIZE),
+			new Font(Font.SERIF, Font.PLAIN, TEMPLATE_POINT_SIZE),
+			new Font(Font.MONOSPACED, Font.PLAIN, TEMPLATE_POINT_SIZE) };
+
+	private final float[][] templates;
+	private final int[] templateDigits;
+
+	public DigitRecognizer() {
+		templates = new float[FONTS.length * 10][];
+		templateDigits = new int[templates.length];
+		int index = 0;
+		for (Font font : FONTS) {
+			for (int digit = 0; digit <= 9; digit++) {
+				templates[index] = renderTemplate(font, (char) ('0' + digit));
+				templateDigits[index] = digit;
+				index++;
+			}
+		}
+	}
+
+	/**
+	 * Reads every strip of {@code frame} and returns the words found, in image
+	 * coordinates. Strips with an unreadable glyph contribute no words.
+	 */
+	public List<Word> recognize(Mat frame, List<Rect> strips) {
+		List<Word> words = new ArrayList<>();
+		for (Rect strip : strips) {
+			List<Word> read;
+			try (MatScope scope = new MatScope()) {
+				read = recognizeStrip(scope.track(frame.submat(strip)));
+			}
+			if (read == null) {
+				continue;
+			}
+			for (Word word : read) {
+				Rectangle box = word.getBoundingBox();
+				words.add(new Word(word.getText(), word.getConfidence(),
+						new Rectangle(box.x + strip.x, box.y + strip.y, box.width, box.height)));
+			}
+		}
+		return words;
+	}
+
+	/** Words of one strip in strip coordinates, or null when any glyph is ambiguous. */
+	List<Word> recognizeStrip(Mat strip) {
+		try (MatScope scope = new MatScope()) {
+			return recognizeStrip(strip, scope);
+		}
+	}
+
+	private List<Word> recognizeStrip(Mat strip, MatScope scope) {
+		Mat gray = toGray(strip, scope);
+		Mat binary = scope.acquire(strip.rows(), strip.cols(), CvType.CV_8UC1);
+		Imgproc.threshold(gray, binary, 0, 255, Imgproc.THRESH_BINARY_INV | Imgproc.THRESH_OTSU);
+
+		Mat labels = scope.acquire(strip.rows(), strip.cols(), CvType.CV_32S);
+		Mat stats = scope.mat();
+		Mat centroids = scope.mat();
+		int count = Imgproc.connectedComponentsWithStats(binary, labels, stats, centroids, 8, CvType.CV_32S);
+		int[] values = new int[count * stats.cols()];
+		stats.get(0, 0, values);
+
+		// Digits of one number share a height; anything much shorter is punctuation or noise
+		int tallest = 0;
+		for (int i = 1; i < count; i++) {
+			tallest = Math.max(tallest, values[i * stats.cols() + Imgproc.CC_STAT_HEIGHT]);
+		}
+		List<Rect> glyphs = new ArrayList<>();
+		for (int i = 1; i < count; i++) {
+			int offset = i * stats.cols();
+			int w = values[offset + Imgproc.CC_STAT_WIDTH];
+			int h = values[offset + Imgproc.CC_STAT_HEIGHT];
+			if (h >= tallest * 0.6 && w <= h * 1.2 && h >= 8) {
+				glyphs.add(new Rect(values[offset + Imgproc.CC_STAT_LEFT], values[offset + Imgproc.CC_STAT_TOP], w, h));
+			}
+		}
+		if (glyphs.isEmpty()) {
+			return null;
+		}
+		glyphs.sort((a, b) -> Integer.compare(a.x, b.x));
+
+		int[] heights = new int[glyphs.size()];
+		for (int i = 0; i < heights.length; i++) {
+			heights[i] = glyphs.get(i).height;
+		}
+		Arrays.sort(heights);
+		int wordGap = Math.max(2, heights[heights.length / 2] * 2 / 5);
+
+		List<Word> words = new ArrayList<>();
+		StringBuilder text = new StringBuilder();
+		Rectangle box = null;
+		float confidence = 100;
+		Rect previous = null;
+		double[] digitScores = new double[10];
+		for (Rect glyph : glyphs) {
+			if (previous != null && glyph.x - (previous.x + previous.width) > wordGap) {
+				words.add(new Word(text.toString(), confidence, box));
+				text.setLength(0);
+				box = null;
+				confidence = 100;
+			}
+			float[] cell = normalize(scope.track(binary.submat(glyph)));
+			Arrays.fill(digitScores, -1);
+			for (int t = 0; t < templates.length; t++) {
+				digitScores[templateDigits[t]] = Math.max(digitScores[templateDigits[t]], dot(cell, templates[t]));
+			}
+			int best = 0;
+			for (int digit = 1; digit <= 9; digit++) {
+				if (digitScores[digit] > digitScores[best]) {
+					best = digit;
+				}
+			}
+			double bestScore = digitScores[best];
+			double secondScore = -1;
+			for (int digit = 0; digit <= 9; digit++) {
+				if (digit != best) {
+					secondScore = Math.max(secondScore, digitScores[digit]);
+				}
+			}
+			if (bestScore < MIN_SCORE || bestScore - secondScore < MIN_MARGIN) {
+				return null;
+			}
+			text.append((char) ('0' + best));
+			Rectangle glyphBox = new Rectangle(glyph.x, glyph.y, glyph.width, glyph.height);
+			box = box == null ? glyphBox : box.union(glyphBox);
+			confidence = Math.min(confidence, (float) (bestScore * 100));
+			previous = glyph;
+		}
+		words.add(new Word(text.toString(), confidence, box));
+		return words;
+	}
+
+	private static Mat toGray(Mat image, MatScope scope) {
+		if (image.channels() == 1) {
+			return image;
+		}
+		Mat gray = scope.acquire(image.rows(), image.cols(), CvType.CV_8UC1);
+		Imgproc.cvtColor(image, gray, image.channels() == 4 ? Imgproc.COLOR_BGRA2GRAY : Imgproc.COLOR_BGR2GRAY);
+		return gray;
+	}
+
+	/**
+	 * Centres the glyph in a cell of the template aspect ratio (so a narrow "1"
+	 * is not stretched), scales it to CELL_WIDTH x CELL_HEIGHT and returns it as
+	 * a zero-mean, unit-length vector.
+	 */
+	private static float[] normalize(Mat glyph) {
+		int width = Math.max(glyph.cols(), glyph.rows() * CELL_WIDTH / CELL_HEIGHT);
+		int height = Math.max(glyph.rows(), glyph.cols() * CELL_HEIGHT / CELL_WIDTH);
+		byte[] pixels = new byte[CELL_WIDTH * CELL_HEIGHT];
+		try (MatScope scope = new MatScope()) {
+			Mat padded = scope.acquire(height, width, CvType.CV_8UC1);
+			padded.setTo(ZERO);
+			int left = (width - glyph.cols()) / 2;
+			int top = (height - glyph.rows()) / 2;
+			glyph.copyTo(scope.track(padded.submat(top, top + glyph.rows(), left, left + glyph.cols())));
+
+			Mat cell = scope.acquire(CELL_HEIGHT, CELL_WIDTH, CvType.CV_8UC1);
+			Imgproc.resize(padded, cell, new Size(CELL_WIDTH, CELL_HEIGHT), 0, 0, Imgproc.INTER_AREA);
+			cell.get(0, 0, pixels);
+		}
+
+		float[] vector = new float[pixels.length];
+		double mean = 0;
+		for (int i = 0; i < pixels.length; i++) {
+			vector[i] = pixels[i] & 0xFF;
+			mean += vector[i];
+		}
+		mean /= vector.length;
+		double norm = 0;
+		for (int i = 0; i < vector.length; i++) {
+			vector[i] -= mean;
+			norm += vector[i] * vector[i];
+		}
+		norm = Math.sqrt(norm);
+		if (norm > 0) {
+			for (int i = 0; i < vector.length; i++) {
+				vector[i] /= norm;
+			}
+		}
+		return vector;
+	}
+
+	private static double dot(float[] a, float[] b) {
+		double sum = 0;
+		for (int i = 0; i < a.length; i++) {
+			sum += a[i] * b[i];
+		}
+		return sum;
+	}
+
+	private static float[] renderTemplate(Font font, char digit) {
+		int size = TEMPLATE_POINT_SIZE * 2;
+		BufferedImage canvas = new BufferedImage(size, size, BufferedImage.TYPE_BYTE_GRAY);
+		Graphics2D g2d = canvas.createGraphics();
+		g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g2d.setColor(Color.WHITE);
+		g2d.fillRect(0, 0, size, size);
+		g2d.setColor(Color.BLACK);
+		g2d.setFont(font);
+		g2d.drawString(String.valueOf(digit), size / 4, size * 3 / 4);
+		g2d.dispose();
+
+		try (MatScope scope = new MatScope()) {
+			Mat binary = scope.mat();
+			Imgproc.threshold(scope.track(MatBridge.toMat(canvas)), binary, 0, 255,
+					Imgproc.THRESH_BINARY_INV | Imgproc.THRESH_OTSU);
+			Mat ink = scope.mat();
+			Core.findNonZero(binary, ink);
+			return normalize(scope.track(binary.submat(Imgproc.boundingRect(ink))));
+		}
+	}
+}
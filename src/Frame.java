@@ -0,0 +1,60 @@
+import java.awt.image.BufferedImage;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * One decoded page as every detector sees it: the image, its BGR or gray Mat,
+ * and a grayscale copy made once on first request. Detectors running at the
+ * same time must only read from it. The owner closes the frame once all of
+ * them have finished.
+ */
+public final class Frame implements AutoCloseable {
+
+	private final BufferedImage image;
+	private final Mat mat;
+	private final MatScope scope = new MatScope();
+	private Mat gray;
+
+	public Frame(BufferedImage image, Mat mat) {
+		this.image = image;
+		this.mat = mat;
+	}
+
+	public BufferedImage getImage() {
+		return image;
+	}
+
+	public Mat getMat() {
+		return mat;
+	}
+
+	public int getWidth() {
+		return mat.cols();
+	}
+
+	public int getHeight() {
+		return mat.rows();
+	}
+
+	/** Single-channel version of {@link #getMat()}, converted by whichever detector asks first. */
+	public synchronized Mat getGray() {
+		if (gray == null) {
+			if (mat.channels() == 1) {
+				gray = mat;
+			} else {
+				gray = scope.acquire(mat.rows(), mat.cols(), CvType.CV_8UC1);
+				Imgproc.cvtColor(mat, gray, mat.channels() == 4 ? Imgproc.COLOR_BGRA2GRAY : Imgproc.COLOR_BGR2GRAY);
+			}
+		}
+		return gray;
+	}
+
+	/** Releases the derived Mats; the page Mat itself belongs to the caller. */
+	@Override
+	public synchronized void close() {
+		scope.close();
+		gray = null;
+	}
+}
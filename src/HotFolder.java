@@ -0,0 +1,267 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.tess4j.ITesseract;
+import net.sourceforge.tess4j.TesseractException;
+
+/**
+ * Watch-folder mode: masks every file that appears in an inbox directory.
+ *
+ * New files are picked up through a {@link WatchService} (plus one scan of
+ * files already waiting at start-up) and placed on a bounded queue, so a burst
+ * of scans holds back the watcher instead of piling up in memory. Worker
+ * threads mask them in parallel and record each result in a {@link Manifest}
+ * in the output directory. A file whose content hash is already in the
+ * manifest, whether from before a restart or re-dropped by a scanner, is
+ * skipped without being decoded.
+ *
+ * Usage: HotFolder &lt;inboxDir&gt; &lt;outputDir&gt; [threads]
+ */
+public class HotFolder {
+
+	private static final Logger log = LoggerFactory.getLogger(HotFolder.class);
+
+	private static final long STABLE_MILLIS = 500;
+	private static final long MAX_SETTLE_MILLIS = 60000;
+
+	private final Path inbox;
+	private final File outputDir;
+	private final int threads;
+	private final Manifest manifest;
+	private final MaskPipeline pipeline = new MaskPipeline();
+	private final PyramidMasker pyramid = new PyramidMasker(pipeline);
+	private final OcrEnginePool engines;
+	private final OutputWriter writer;
+	private final BlockingQueue<Path> queue;
+	// Create and modify events for one file must not queue it twice
+	private final Set<Path> pending = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+	// Two copies of one scan arriving together must not both be masked
+	private final Set<String> inFlight = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	public HotFolder(Path inbox, File outputDir, int threads) throws IOException {
+		if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+			throw new IOException("Cannot create output directory: " + outputDir);
+		}
+		this.inbox = inbox;
+		this.outputDir = outputDir;
+		this.threads = threads;
+		this.engines = new OcrEnginePool(threads);
+		this.writer = new OutputWriter(Math.max(1, threads / 4), threads, OutputWriter.Format.configured());
+		this.queue = new ArrayBlockingQueue<>(threads * 4);
+		this.manifest = new Manifest(outputDir.toPath().resolve("manifest.tsv"));
+		Metrics.gauge("hotfolder_queue_depth", queue::size);
+	}
+
+	/** Warms the pipeline before the first file is taken; see {@link Bootstrap}. */
+	public void warmUp() throws InterruptedException, TesseractException {
+		Bootstrap.warmUp(pipeline, engines);
+		Bootstrap.ready();
+	}
+
+	/** Watches the inbox until the thread is interrupted or the directory goes away. */
+	public void run() throws IOException, InterruptedException {
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		for (int i = 0; i < threads; i++) {
+			workers.execute(this::work);
+		}
+		log.info("Watching {} with {} workers; {} files already in the manifest",
+				new Object[] { inbox, threads, manifest.size() });
+
+		try (WatchService watcher = inbox.getFileSystem().newWatchService()) {
+			inbox.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+			// Files dropped while we were not running
+			scan();
+			while (true) {
+				WatchKey key = watcher.take();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						scan();
+					} else {
+						offer(inbox.resolve((Path) event.context()));
+					}
+				}
+				if (!key.reset()) {
+					log.warn("Inbox {} is no longer accessible", inbox);
+					break;
+				}
+			}
+		} finally {
+			workers.shutdownNow();
+			workers.awaitTermination(1, TimeUnit.MINUTES);
+			writer.awaitCompletion();
+			engines.shutdown();
+			manifest.close();
+		}
+	}
+
+	private void scan() throws IOException, InterruptedException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(inbox)) {
+			for (Path file : files) {
+				offer(file);
+			}
+		}
+	}
+
+	private void offer(Path file) throws InterruptedException {
+		if (BatchMasker.isImageFile(file.toFile()) && pending.add(file)) {
+			queue.put(file);
+		}
+	}
+
+	private void work() {
+		try {
+			while (true) {
+				Path file = queue.take();
+				try {
+					process(file);
+				} catch (InterruptedException | CancellationException ex) {
+					// Stopped mid-file: left unrecorded, so it is retried after a restart
+					Thread.currentThread().interrupt();
+					return;
+				} catch (Exception ex) {
+					// Not recorded, so the file is retried after a restart
+					Metrics.increment("hotfolder_files_total{outcome=\"failed\"}", 1);
+					log.error("Failed to mask {}", file.getFileName(), ex);
+				} finally {
+					pending.remove(file);
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void process(Path file) throws Exception {
+		if (!awaitStable(file)) {
+			return;
+		}
+		String hash = Manifest.hash(file);
+		Manifest.Entry seen = manifest.get(hash);
+		if (seen != null) {
+			Metrics.increment("hotfolder_files_total{outcome=\"duplicate\"}", 1);
+			log.info("Skipping {}: same content as {} ({})",
+					new Object[] { file.getFileName(), seen.getSource(), seen.getOutput() });
+			return;
+		}
+		if (!inFlight.add(hash)) {
+			Metrics.increment("hotfolder_files_total{outcome=\"duplicate\"}", 1);
+			log.info("Skipping {}: same content is being masked", file.getFileName());
+			return;
+		}
+		CompletableFuture<Void> recorded;
+		try {
+			recorded = mask(file, hash);
+		} catch (Exception ex) {
+			inFlight.remove(hash);
+			throw ex;
+		}
+		// The worker moves on to the next file while this one is still being written
+		recorded.whenComplete((done, error) -> {
+			inFlight.remove(hash);
+			if (error != null) {
+				Metrics.increment("hotfolder_files_total{outcome=\"failed\"}", 1);
+				log.error("Failed to write {}", file.getFileName(), error);
+			}
+		});
+	}
+
+	/** Completes once the output is written and recorded in the manifest. */
+	private CompletableFuture<Void> mask(Path file, String hash) throws Exception {
+		long start = System.nanoTime();
+		File input = file.toFile();
+		String name = OutputLocation.baseName(input) + "_" + hash.substring(0, 12) + "_masked";
+		ITesseract tesseract = engines.borrow();
+		try {
+			if (MultiPageMasker.isMultiPageFormat(input)) {
+				File output = OutputLocation.unique(outputDir, name, "tif");
+				MultiPageMasker.Summary summary = new MultiPageMasker(pipeline).mask(input, output, tesseract);
+				record(hash, input, output, summary.getMaskedPages() > 0 ? "masked" : "no_number", start,
+						new LinkedHashMap<String, Long>());
+				return CompletableFuture.completedFuture(null);
+			}
+			MaskResult result = pyramid.mask(input, tesseract);
+			String outcome = result.isMasked() ? "masked" : result.isNumberFound() ? "not_located" : "no_number";
+			return writer.submit(result.getImage(), outputDir, name).thenAccept(output -> {
+				try {
+					record(hash, input, output, outcome, start, result.getStageNanos());
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			});
+		} finally {
+			engines.release(tesseract);
+		}
+	}
+
+	private void record(String hash, File input, File output, String outcome, long start, Map<String, Long> stageNanos)
+			throws IOException {
+		long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		manifest.record(new Manifest.Entry(hash, input.getName(), output.getName(), outcome, millis, stageNanos));
+		Metrics.increment("hotfolder_files_total{outcome=\"" + outcome + "\"}", 1);
+		log.info("Masked {} -> {} ({}, {} ms)", new Object[] { input.getName(), output.getName(), outcome, millis });
+	}
+
+	/**
+	 * Waits until a scanner has finished writing the file: its size and
+	 * modification time stay the same across one check interval.
+	 */
+	private static boolean awaitStable(Path file) throws IOException, InterruptedException {
+		long deadline = System.currentTimeMillis() + MAX_SETTLE_MILLIS;
+		long size = -1;
+		long modified = -1;
+		while (System.currentTimeMillis() < deadline) {
+			if (!Files.exists(file)) {
+				return false;
+			}
+			long currentSize = Files.size(file);
+			long currentModified = Files.getLastModifiedTime(file).toMillis();
+			if (currentSize > 0 && currentSize == size && currentModified == modified) {
+				return true;
+			}
+			size = currentSize;
+			modified = currentModified;
+			Thread.sleep(STABLE_MILLIS);
+		}
+		log.warn("{} is still changing after {} ms; masking it anyway", file.getFileName(), MAX_SETTLE_MILLIS);
+		return true;
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException, TesseractException {
+		if (args.length < 2) {
+			System.err.println("Usage: HotFolder <inboxDir> <outputDir> [threads]");
+			System.exit(2);
+		}
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		Bootstrap.loadNatives();
+		Metrics.startPeriodicLog(60);
+
+		HotFolder hotFolder = new HotFolder(Paths.get(args[0]), new File(args[1]), threads);
+		hotFolder.warmUp();
+		hotFolder.run();
+	}
+}
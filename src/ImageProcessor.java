@@ -5,17 +5,13 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.RenderingHints;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.List;
 
 import javax.imageio.ImageIO;
@@ -26,17 +22,25 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.SwingUtilities;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import net.sourceforge.tess4j.ITesseract;
-import net.sourceforge.tess4j.Tesseract;
 import net.sourceforge.tess4j.TesseractException;
 
 public class ImageProcessor extends JFrame {
 
+    private static final Logger log = LoggerFactory.getLogger(ImageProcessor.class);
+
+    private File imageFile;
     private BufferedImage image;
     private BufferedImage maskImage;
     private Graphics2D maskGraphics;
     private JFileChooser fileChooser;
     private ITesseract tess;
+    private final Preprocessor preprocessor = Preprocessor.configured();
+    private final OutputWriter outputWriter = new OutputWriter(1, 1, OutputWriter.Format.configured());
+    private final Deskew deskew = new Deskew();
 
     public ImageProcessor() {
         setTitle("Image Processor");
@@ -76,20 +80,19 @@ public class ImageProcessor extends JFrame {
         fileChooser = new JFileChooser();
 
         // Initialize Tesseract OCR
-        tess = new Tesseract();
-        tess.setDatapath("C:\\Program Files\\Tesseract-OCR\\tessdata"); // Set the path to the tessdata directory
+        tess = Bootstrap.newEngine();
     }
 
     private void handleFileInputChange() {
         int choice = fileChooser.showOpenDialog(this);
 
         if (choice == JFileChooser.APPROVE_OPTION) {
-            File selectedFile = fileChooser.getSelectedFile();
+            imageFile = fileChooser.getSelectedFile();
             try {
-                image = ImageIO.read(selectedFile);
+                image = ImageIO.read(imageFile);
                 maskImageOnCanvas();
             } catch (IOException e) {
-                e.printStackTrace();
+                log.error("Could not load {}", imageFile, e);
                 JOptionPane.showMessageDialog(this, "Error loading the image.", "Error", JOptionPane.ERROR_MESSAGE);
             }
         }
@@ -98,11 +101,21 @@ public class ImageProcessor extends JFrame {
     private void downloadMaskFile() {
         if (maskImage != null) {
             try {
-                File outputFile = new File("C:\\AadharImg\\mask_image.png"); // Replace with the desired output file path
-                ImageIO.write(maskImage, "PNG", outputFile);
-                JOptionPane.showMessageDialog(this, "File downloaded successfully!", "Download", JOptionPane.INFORMATION_MESSAGE);
+                // Encoded on the writer thread; the dialog follows once the file is in place
+                outputWriter.submit(maskImage, OutputLocation.directory(), OutputLocation.baseName(imageFile) + "_masked")
+                        .whenComplete((outputFile, error) -> SwingUtilities.invokeLater(() -> {
+                            if (error == null) {
+                                JOptionPane.showMessageDialog(this, "File downloaded successfully!", "Download", JOptionPane.INFORMATION_MESSAGE);
+                            } else {
+                                log.error("Could not save the masked image", error);
+                                JOptionPane.showMessageDialog(this, "Error while downloading the file.", "Error", JOptionPane.ERROR_MESSAGE);
+                            }
+                        }));
             } catch (IOException e) {
-                e.printStackTrace();
+                log.error("Could not save the masked image", e);
+                JOptionPane.showMessageDialog(this, "Error while downloading the file.", "Error", JOptionPane.ERROR_MESSAGE);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
                 JOptionPane.showMessageDialog(this, "Error while downloading the file.", "Error", JOptionPane.ERROR_MESSAGE);
             }
         }
@@ -111,96 +124,54 @@ public class ImageProcessor extends JFrame {
  // ...
 
     private void maskImageOnCanvas() {
-        try {
-            String imageBase64 = convertImageToBase64(image);
-            BufferedImage rotatedImage = rotateImage(imageBase64, 45);
-            String angleBase64 = convertImageToBase64(rotatedImage);
-
-            List<MaskBlock> maskCoordinate = performOCR(angleBase64);
-            // Modify the maskCoordinate as per your logic
-            maskAadhaarNumbers(maskCoordinate);
+        // Stages hand the raster straight to each other: no Base64, JPEG or temp-file hops.
+        // The page is only rotated when its measured skew is above the threshold.
+        Deskew.Result deskewed;
+        try (MatScope scope = new MatScope()) {
+            deskewed = deskew.apply(image, scope.track(MatBridge.toMat(image)));
+        }
 
-            maskImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
-            maskGraphics = maskImage.createGraphics();
-            maskGraphics.setColor(Color.RED);
+        List<MaskBlock> maskCoordinate = performOCR(deskewed.getImage());
+        // Map the blocks found on the straightened page back onto the original image
+        for (MaskBlock maskBlock : maskCoordinate) {
+            Point2D source = deskewed.toSource(maskBlock.x, maskBlock.y);
+            maskBlock.x = (int) Math.round(source.getX());
+            maskBlock.y = (int) Math.round(source.getY());
+        }
+        // Modify the maskCoordinate as per your logic
+        maskAadhaarNumbers(maskCoordinate);
 
-            if (!maskCoordinate.isEmpty()) {
-                int[] xPoints = new int[maskCoordinate.size()];
-                int[] yPoints = new int[maskCoordinate.size()];
+        maskImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        maskGraphics = maskImage.createGraphics();
+        maskGraphics.setColor(Color.RED);
 
-                for (int i = 0; i < maskCoordinate.size(); i++) {
-                    xPoints[i] = maskCoordinate.get(i).x;
-                    yPoints[i] = maskCoordinate.get(i).y;
-                }
+        if (!maskCoordinate.isEmpty()) {
+            int[] xPoints = new int[maskCoordinate.size()];
+            int[] yPoints = new int[maskCoordinate.size()];
 
-                maskGraphics.fillPolygon(xPoints, yPoints, maskCoordinate.size());
+            for (int i = 0; i < maskCoordinate.size(); i++) {
+                xPoints[i] = maskCoordinate.get(i).x;
+                yPoints[i] = maskCoordinate.get(i).y;
             }
 
-            repaint();
-        } catch (IOException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Error while processing the image.", "Error", JOptionPane.ERROR_MESSAGE);
+            maskGraphics.fillPolygon(xPoints, yPoints, maskCoordinate.size());
         }
-    }
-
-    // ...
-
-    private BufferedImage rotateImage(String base64Image, int angle) throws IOException {
-        BufferedImage originalImage = convertBase64ToImage(base64Image);
-
-        double radianAngle = Math.toRadians(angle);
-        int width = originalImage.getWidth();
-        int height = originalImage.getHeight();
-
-        int imageType = BufferedImage.TYPE_INT_ARGB; // Use a known image type, such as TYPE_INT_ARGB
 
-        BufferedImage rotatedImage = new BufferedImage(width, height, imageType);
-
-        AffineTransform transform = new AffineTransform();
-        transform.rotate(radianAngle, width / 2.0, height / 2.0);
-
-        Graphics2D g2d = rotatedImage.createGraphics();
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g2d.drawImage(originalImage, transform, null);
-        g2d.dispose();
-
-        return rotatedImage;
-    }
-
-
-
-    private String convertImageToBase64(BufferedImage image) throws IOException {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        ImageIO.write(image, "JPEG", bos);
-        byte[] imageBytes = bos.toByteArray();
-        return "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(imageBytes);
+        repaint();
     }
 
-    private BufferedImage convertBase64ToImage(String base64Image) throws IOException {
-        byte[] imageBytes = Base64.getDecoder().decode(base64Image.split(",")[1]);
-        ByteArrayInputStream bis = new ByteArrayInputStream(imageBytes);
-        return ImageIO.read(bis);
-    }
-
-    private List<MaskBlock> performOCR(String imageBase) {
+    private List<MaskBlock> performOCR(BufferedImage bufferedImage) {
         List<MaskBlock> maskArray = new ArrayList<>();
         try {
-            // Perform OCR using Tesseract
-            File tempImageFile = File.createTempFile("temp_image", ".png");
-            byte[] imageBytes = Base64.getDecoder().decode(imageBase.split(",")[1]);
-            try (ByteArrayInputStream bis = new ByteArrayInputStream(imageBytes)) {
-                BufferedImage bufferedImage = ImageIO.read(bis);
-                ImageIO.write(bufferedImage, "png", tempImageFile);
-            }
-
-            String extractedText = tess.doOCR(tempImageFile);
-System.out.println(extractedText);
+            // Perform OCR using Tesseract directly on the in-memory raster
+            // Scale 1: the coordinates in the text refer to the original image
+            String extractedText = tess.doOCR(preprocessor.apply(bufferedImage, 1).getImage());
+            log.debug("OCR returned {} characters", extractedText.length());
             // Process the extracted text to extract coordinates
             // In this example, let's assume the extracted text contains
             // comma-separated pairs of x and y coordinates: "100,100 200,100 200,200 100,200"
             String[] coordinates = extractedText.split("\\s+");
             for (String coordinate : coordinates) {
-            	System.out.println(coordinate);
                 String[] xy = coordinate.split(",");
                 if (xy.length == 2) {
                     int x = Integer.parseInt(xy[0]);
@@ -208,10 +179,8 @@ System.out.println(extractedText);
                     maskArray.add(new MaskBlock(x, y));
                 }
             }
-
-            tempImageFile.delete(); // Clean up temp file
-        } catch (TesseractException | IOException e) {
-            e.printStackTrace();
+        } catch (TesseractException e) {
+            log.error("OCR failed", e);
         }
         return maskArray;
     }
@@ -281,6 +250,8 @@ System.out.println(extractedText);
     }
 
     public static void main(String[] args) {
+        Bootstrap.loadNatives();
+
         SwingUtilities.invokeLater(() -> {
             ImageProcessor frame = new ImageProcessor();
             frame.setVisible(true);
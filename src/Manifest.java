@@ -0,0 +1,180 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent record of processed inputs, keyed by the SHA-256 of the file
+ * bytes. One tab-separated line per file: hash, source name, output name,
+ * outcome, total milliseconds and per-stage milliseconds, keyed by the
+ * {@link MaskPipeline} stage names ({@code convert=..,deskew=..,ocr=..}). The
+ * file is append-only and flushed per entry, so a crash loses at most the line
+ * being written and a restart skips everything recorded before it.
+ */
+public class Manifest {
+
+	private static final String HEADER = "# hash\tsource\toutput\toutcome\tmillis\tstages";
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private final BufferedWriter writer;
+
+	public Manifest(Path file) throws IOException {
+		boolean exists = Files.exists(file);
+		if (exists) {
+			try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					Entry entry = Entry.parse(line);
+					if (entry != null) {
+						entries.put(entry.hash, entry);
+					}
+				}
+			}
+		}
+		writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+				StandardOpenOption.APPEND);
+		if (!exists) {
+			writer.write(HEADER);
+			writer.newLine();
+			writer.flush();
+		} else if (!endsWithNewline(file)) {
+			// A crash mid-write left half a line; start the next entry on a line of its own
+			writer.newLine();
+			writer.flush();
+		}
+	}
+
+	private static boolean endsWithNewline(Path file) throws IOException {
+		try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+			if (channel.size() == 0) {
+				return true;
+			}
+			ByteBuffer last = ByteBuffer.allocate(1);
+			channel.position(channel.size() - 1).read(last);
+			return last.get(0) == '\n';
+		}
+	}
+
+	public Entry get(String hash) {
+		return entries.get(hash);
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public synchronized void record(Entry entry) throws IOException {
+		writer.write(entry.format());
+		writer.newLine();
+		writer.flush();
+		entries.put(entry.hash, entry);
+	}
+
+	public synchronized void close() throws IOException {
+		writer.close();
+	}
+
+	/** Hex SHA-256 of the file contents. */
+	public static String hash(Path file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+		byte[] buffer = new byte[64 * 1024];
+		try (InputStream in = Files.newInputStream(file)) {
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b & 0xff));
+		}
+		return hex.toString();
+	}
+
+	public static class Entry {
+		private final String hash;
+		private final String source;
+		private final String output;
+		private final String outcome;
+		private final long millis;
+		private final String stages;
+
+		public Entry(String hash, String source, String output, String outcome, long millis,
+				Map<String, Long> stageNanos) {
+			this(hash, source, output, outcome, millis, formatStages(stageNanos));
+		}
+
+		private Entry(String hash, String source, String output, String outcome, long millis, String stages) {
+			this.hash = hash;
+			this.source = clean(source);
+			this.output = clean(output);
+			this.outcome = outcome;
+			this.millis = millis;
+			this.stages = stages;
+		}
+
+		public String getSource() {
+			return source;
+		}
+
+		public String getOutput() {
+			return output;
+		}
+
+		public String getOutcome() {
+			return outcome;
+		}
+
+		String format() {
+			return hash + '\t' + source + '\t' + output + '\t' + outcome + '\t' + millis + '\t' + stages;
+		}
+
+		static Entry parse(String line) {
+			if (line.isEmpty() || line.startsWith("#")) {
+				return null;
+			}
+			String[] fields = line.split("\t", -1);
+			if (fields.length < 6) {
+				return null;
+			}
+			try {
+				return new Entry(fields[0], fields[1], fields[2], fields[3], Long.parseLong(fields[4]), fields[5]);
+			} catch (NumberFormatException ex) {
+				return null;
+			}
+		}
+
+		private static String formatStages(Map<String, Long> stageNanos) {
+			StringBuilder stages = new StringBuilder();
+			for (Map.Entry<String, Long> stage : stageNanos.entrySet()) {
+				if (stages.length() > 0) {
+					stages.append(',');
+				}
+				stages.append(stage.getKey()).append('=')
+						.append(String.format(Locale.ROOT, "%.1f", stage.getValue() / 1e6));
+			}
+			return stages.toString();
+		}
+
+		/** File names may not break the line format. */
+		private static String clean(String value) {
+			return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+		}
+	}
+}
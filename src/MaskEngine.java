@@ -0,0 +1,124 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opencv.core.Rect;
+
+/**
+ * Paints any number of mask regions into an image in a single pass. Regions
+ * are clipped to the image and overlapping or touching boxes are merged first,
+ * so every pixel is written at most once however many hits a page has. The
+ * image is modified in place.
+ */
+public class MaskEngine {
+
+	private static final int MIN_PIXEL_BLOCK = 6;
+
+	private final MaskPolicy policy;
+
+	public MaskEngine(MaskPolicy policy) {
+		this.policy = policy;
+	}
+
+	public MaskPolicy getPolicy() {
+		return policy;
+	}
+
+	public BufferedImage paint(BufferedImage image, List<Rect> regions) {
+		List<Rect> merged = merge(regions, image.getWidth(), image.getHeight());
+		if (merged.isEmpty()) {
+			return image;
+		}
+		if (policy == MaskPolicy.PIXELATE) {
+			pixelate(image.getRaster(), merged);
+		} else {
+			Graphics2D graphics = image.createGraphics();
+			graphics.setColor(Color.BLACK);
+			for (Rect rect : merged) {
+				graphics.fillRect(rect.x, rect.y, rect.width, rect.height);
+			}
+			graphics.dispose();
+		}
+		return image;
+	}
+
+	/** Clips the regions to the image and unions any that overlap or touch. */
+	public static List<Rect> merge(List<Rect> regions, int width, int height) {
+		List<Rect> merged = new ArrayList<>(regions.size());
+		for (Rect region : regions) {
+			int left = Math.max(0, region.x);
+			int top = Math.max(0, region.y);
+			int right = Math.min(width, region.x + region.width);
+			int bottom = Math.min(height, region.y + region.height);
+			if (right > left && bottom > top) {
+				merged.add(new Rect(left, top, right - left, bottom - top));
+			}
+		}
+
+		// A union can reach boxes an earlier comparison missed, so repeat until stable
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int i = 0; i < merged.size() && !changed; i++) {
+				for (int j = i + 1; j < merged.size(); j++) {
+					Rect a = merged.get(i);
+					Rect b = merged.get(j);
+					if (a.x <= b.x + b.width && b.x <= a.x + a.width && a.y <= b.y + b.height && b.y <= a.y + a.height) {
+						int left = Math.min(a.x, b.x);
+						int top = Math.min(a.y, b.y);
+						int right = Math.max(a.x + a.width, b.x + b.width);
+						int bottom = Math.max(a.y + a.height, b.y + b.height);
+						merged.set(i, new Rect(left, top, right - left, bottom - top));
+						merged.remove(j);
+						changed = true;
+						break;
+					}
+				}
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Replaces each block with its mean colour. Blocks are half the box height so
+	 * no digit survives as more than a couple of flat tiles.
+	 */
+	private static void pixelate(WritableRaster raster, List<Rect> regions) {
+		int bands = raster.getNumBands();
+		int largest = 0;
+		for (Rect rect : regions) {
+			largest = Math.max(largest, blockSize(rect));
+		}
+		int[] pixels = new int[largest * largest * bands];
+		long[] sums = new long[bands];
+
+		for (Rect rect : regions) {
+			int block = blockSize(rect);
+			for (int y = rect.y; y < rect.y + rect.height; y += block) {
+				int h = Math.min(block, rect.y + rect.height - y);
+				for (int x = rect.x; x < rect.x + rect.width; x += block) {
+					int w = Math.min(block, rect.x + rect.width - x);
+					int samples = w * h * bands;
+					raster.getPixels(x, y, w, h, pixels);
+					for (int b = 0; b < bands; b++) {
+						sums[b] = 0;
+					}
+					for (int i = 0; i < samples; i++) {
+						sums[i % bands] += pixels[i];
+					}
+					for (int i = 0; i < samples; i++) {
+						pixels[i] = (int) (sums[i % bands] / (w * h));
+					}
+					raster.setPixels(x, y, w, h, pixels);
+				}
+			}
+		}
+	}
+
+	private static int blockSize(Rect rect) {
+		return Math.max(MIN_PIXEL_BLOCK, rect.height / 2);
+	}
+}
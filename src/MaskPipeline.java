@@ -0,0 +1,502 @@
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.tess4j.ITessAPI;
+import net.sourceforge.tess4j.ITesseract;
+import net.sourceforge.tess4j.TesseractException;
+import net.sourceforge.tess4j.Word;
+
+/**
+ * Headless OCR, localization and masking steps shared by the Swing UI and the
+ * batch runner. The pipeline holds no engine of its own: callers pass in the
+ * Tesseract instance they own, so one pipeline can serve many worker threads.
+ */
+public class MaskPipeline {
+
+	private static final Logger log = LoggerFactory.getLogger(MaskPipeline.class);
+
+	public static final int DEFAULT_OCR_CACHE_SIZE = 256;
+
+	/** Stage names, as keys of the timings map and as reported to a stage listener. */
+	public static final String STAGE_CONVERT = "convert";
+	public static final String STAGE_DESKEW = "deskew";
+	public static final String STAGE_OCR = "ocr";
+	public static final String STAGE_LOCALIZE = "localize";
+	public static final String STAGE_DETECTORS = "detectors";
+
+	private static final Consumer<String> NO_LISTENER = stage -> {
+	};
+
+	private final OcrCache ocrCache;
+	private final MaskEngine maskEngine;
+	private final List<OcrProfile> cascade;
+	private final BandedOcr bandedOcr;
+	private final Preprocessor preprocessor;
+	private final DetectorSet detectors;
+	private volatile DigitRecognizer digitRecognizer;
+	private final RoiDetector roiDetector = new RoiDetector();
+	private final Deskew deskew = new Deskew();
+
+	public MaskPipeline() {
+		this(DEFAULT_OCR_CACHE_SIZE);
+	}
+
+	/** @param ocrCacheSize number of recognition results to keep; 0 disables the cache */
+	public MaskPipeline(int ocrCacheSize) {
+		this(ocrCacheSize, MaskPolicy.configured());
+	}
+
+	/** Uses the cascade picked by {@link OcrProfile#configuredCascade()}. */
+	public MaskPipeline(int ocrCacheSize, MaskPolicy policy) {
+		this(ocrCacheSize, policy, OcrProfile.configuredCascade());
+	}
+
+	/** @param cascade OCR profiles to try in order until one yields a valid number */
+	public MaskPipeline(int ocrCacheSize, MaskPolicy policy, List<OcrProfile> cascade) {
+		this(ocrCacheSize, policy, cascade, null);
+	}
+
+	/**
+	 * @param bandedOcr splits tall pages across cores for whole-page profiles; null
+	 *                  keeps every page on the caller's engine
+	 */
+	public MaskPipeline(int ocrCacheSize, MaskPolicy policy, List<OcrProfile> cascade, BandedOcr bandedOcr) {
+		this(ocrCacheSize, policy, cascade, bandedOcr, Preprocessor.configured(), DetectorSet.configured());
+	}
+
+	/**
+	 * @param preprocessor cleans every image up before Tesseract sees it
+	 * @param detectors    run alongside the number localizer on the same frame
+	 */
+	public MaskPipeline(int ocrCacheSize, MaskPolicy policy, List<OcrProfile> cascade, BandedOcr bandedOcr,
+			Preprocessor preprocessor, DetectorSet detectors) {
+		if (cascade.isEmpty()) {
+			throw new IllegalArgumentException("OCR cascade must not be empty");
+		}
+		this.ocrCache = new OcrCache(ocrCacheSize);
+		this.maskEngine = new MaskEngine(policy);
+		this.cascade = new ArrayList<>(cascade);
+		this.bandedOcr = bandedOcr;
+		this.preprocessor = preprocessor;
+		this.detectors = detectors;
+	}
+
+	public MaskResult process(ITesseract tesseract, BufferedImage image) throws TesseractException {
+		Map<String, Long> stageNanos = new LinkedHashMap<>();
+		Detection detection = detect(tesseract, image, stageNanos);
+		return mask(image, detection, stageNanos);
+	}
+
+	/**
+	 * Finds the Aadhaar number, its regions and everything the other detectors
+	 * report, without touching the image. The image is converted once; the
+	 * detectors read that frame on their own threads while OCR runs on this
+	 * one. Regions are reported in the coordinates of {@code image}.
+	 */
+	public Detection detect(ITesseract tesseract, BufferedImage image, Map<String, Long> stageNanos)
+			throws TesseractException {
+		return detect(tesseract, image, stageNanos, NO_LISTENER);
+	}
+
+	/**
+	 * Like {@link #detect(ITesseract, BufferedImage, Map)}, calling
+	 * {@code onStage} on this thread with each {@code STAGE_*} name as that
+	 * stage finishes.
+	 */
+	public Detection detect(ITesseract tesseract, BufferedImage image, Map<String, Long> stageNanos,
+			Consumer<String> onStage) throws TesseractException {
+		Metrics.Stopwatch watch = Metrics.stopwatch();
+		try (MatScope scope = new MatScope()) {
+			Mat mat = MatBridge.toMat(image, frameMat(image, scope));
+			finished(STAGE_CONVERT, watch, stageNanos, onStage);
+			try (Frame frame = new Frame(image, mat)) {
+				DetectorSet.Pending others = detectors.start(frame);
+				Detection detection;
+				try {
+					detection = detectNumber(tesseract, image, mat, stageNanos, onStage);
+				} catch (RuntimeException | TesseractException ex) {
+					others.awaitQuietly();
+					throw ex;
+				}
+				watch.restart();
+				List<Rect> otherRegions = others.await();
+				// Only the wait beyond the number path: the detectors overlap with OCR
+				finished(STAGE_DETECTORS, watch, stageNanos, onStage);
+				return detection.withOtherRegions(otherRegions);
+			}
+		}
+	}
+
+	/** Finds only the Aadhaar number and its regions, without the other detectors. */
+	public Detection detectNumber(ITesseract tesseract, BufferedImage image, Map<String, Long> stageNanos)
+			throws TesseractException {
+		try (MatScope scope = new MatScope()) {
+			return detectNumber(tesseract, image, MatBridge.toMat(image, frameMat(image, scope)), stageNanos,
+					NO_LISTENER);
+		}
+	}
+
+	/** A pooled Mat shaped for the image, handed back to the pool when the scope closes. */
+	private static Mat frameMat(BufferedImage image, MatScope scope) {
+		return scope.acquire(image.getHeight(), image.getWidth(), MatBridge.matType(image));
+	}
+
+	private Detection detectNumber(ITesseract tesseract, BufferedImage image, Mat frame,
+			Map<String, Long> stageNanos, Consumer<String> onStage) throws TesseractException {
+		Metrics.Stopwatch watch = Metrics.stopwatch();
+
+		// Straighten only when the page is visibly skewed; most scans skip the rotation
+		Deskew.Result deskewed = deskew.apply(image, frame);
+		finished(STAGE_DESKEW, watch, stageNanos, onStage);
+
+		OcrResult ocr;
+		try (MatScope scope = new MatScope()) {
+			BufferedImage page = deskewed.getImage();
+			// The detectors may still be reading the frame, so the rotated page gets a Mat of its own
+			Mat pageMat = deskewed.isRotated() ? MatBridge.toMat(page, frameMat(page, scope)) : frame;
+			ocr = recognize(tesseract, page, pageMat, scope);
+		}
+		List<AadhaarScanner.Match> numbers = AadhaarScanner.scan(ocr.getText());
+		finished(STAGE_OCR, watch, stageNanos, onStage);
+		if (numbers.isEmpty()) {
+			return Detection.notLocated("");
+		}
+
+		// Every occurrence is masked: front and back sides, address block, VIDs
+		List<Rect> regions = new ArrayList<>(numbers.size());
+		float confidence = 100;
+		for (AadhaarScanner.Match number : numbers) {
+			Located located = locate(ocr, number, maskEngine.getPolicy().maskedDigits(number));
+			if (located != null) {
+				regions.add(deskewed.toSource(located.rect));
+				confidence = Math.min(confidence, located.confidence);
+			}
+		}
+		finished(STAGE_LOCALIZE, watch, stageNanos, onStage);
+		if (regions.isEmpty()) {
+			return Detection.notLocated(numbers.get(0).getNumber());
+		}
+		return new Detection(numbers.get(0).getNumber(), regions, confidence);
+	}
+
+	private static void finished(String stage, Metrics.Stopwatch watch, Map<String, Long> stageNanos,
+			Consumer<String> onStage) {
+		stageNanos.put(stage, watch.lap(stage));
+		onStage.accept(stage);
+	}
+
+	/**
+	 * Masks every detected region, the number's and the other detectors', in one
+	 * pass and records the document outcome. The outcome describes the number;
+	 * the other regions are masked even when no number was found.
+	 */
+	public MaskResult mask(BufferedImage image, Detection detection, Map<String, Long> stageNanos) {
+		String outcome = !detection.isNumberFound() ? "no_number" : !detection.isLocated() ? "not_located" : "masked";
+		Metrics.increment("aadhaar_documents_total{outcome=\"" + outcome + "\"}", 1);
+		List<Rect> all = new ArrayList<>(detection.getOtherRegions());
+		if (detection.isNumberFound()) {
+			all.addAll(detection.getRegions());
+		}
+		if (all.isEmpty()) {
+			return new MaskResult(image, detection.getAadhaarNumber(), Collections.<Rect>emptyList(), stageNanos);
+		}
+		Metrics.Stopwatch watch = Metrics.stopwatch();
+		List<Rect> regions = MaskEngine.merge(all, image.getWidth(), image.getHeight());
+		BufferedImage masked = maskEngine.paint(image, regions);
+		stageNanos.put("mask", watch.lap("mask"));
+		Metrics.increment("aadhaar_regions_masked_total", regions.size());
+		return new MaskResult(masked, detection.getAadhaarNumber(), regions, stageNanos);
+	}
+
+	/**
+	 * Recognizes the page text and word boxes by walking the OCR profile cascade,
+	 * cheapest first, and stopping at the first profile whose text holds a valid
+	 * number. The default cascade reads the {@link RoiDetector} strips with the
+	 * digits-only profile and only falls back to whole-page, upscaled and rotated
+	 * passes when that finds nothing. Results are cached by pixel content, so
+	 * re-processing an unchanged image skips OCR entirely.
+	 */
+	public OcrResult recognize(ITesseract tesseract, BufferedImage image) throws TesseractException {
+		try (MatScope scope = new MatScope()) {
+			return recognize(tesseract, image, null, scope);
+		}
+	}
+
+	/** @param scope owns the frame converted here when {@code frame} is null and the strips need one */
+	private OcrResult recognize(ITesseract tesseract, BufferedImage image, Mat frame, MatScope scope)
+			throws TesseractException {
+		// No hash for a disabled cache: the full pixel pass would only slow the miss down
+		String key = ocrCache.isEnabled() ? OcrCache.contentHash(image) : null;
+		OcrResult cached = key != null ? ocrCache.get(key) : null;
+		if (cached != null) {
+			return cached;
+		}
+
+		OcrResult result = null;
+		OcrResult fallback = null;
+		List<Rect> strips = null;
+		for (OcrProfile profile : cascade) {
+			if (profile.isStrips()) {
+				if (strips == null) {
+					if (frame == null) {
+						frame = MatBridge.toMat(image, frameMat(image, scope));
+					}
+					strips = roiDetector.detect(frame);
+				}
+				if (strips.isEmpty()) {
+					continue;
+				}
+			} else if (!profile.appliesTo(image)) {
+				continue;
+			}
+
+			String label = "{profile=\"" + profile.getName() + "\"}";
+			Metrics.Stopwatch watch = Metrics.stopwatch();
+			OcrResult attempt = profile.isTemplates() ? new OcrResult(digitRecognizer().recognize(frame, strips))
+					: recognize(tesseract, image, profile, strips);
+			watch.lap("ocr." + profile.getName());
+			Metrics.increment("ocr_profile_runs_total" + label, 1);
+			if (!AadhaarScanner.scan(attempt.getText()).isEmpty()) {
+				Metrics.increment("ocr_profile_hits_total" + label, 1);
+				result = attempt;
+				break;
+			}
+			if (fallback == null && !profile.isStrips()) {
+				fallback = attempt;
+			}
+		}
+		if (result == null) {
+			// Keep the plain page text for callers that show it, even without a number
+			result = fallback != null ? fallback : new OcrResult(Collections.<Word>emptyList());
+		}
+		if (key != null) {
+			ocrCache.put(key, result);
+		}
+		return result;
+	}
+
+	/** Built on first use: rendering the templates needs the OpenCV natives. */
+	private DigitRecognizer digitRecognizer() {
+		DigitRecognizer recognizer = digitRecognizer;
+		if (recognizer == null) {
+			synchronized (this) {
+				recognizer = digitRecognizer;
+				if (recognizer == null) {
+					recognizer = new DigitRecognizer();
+					digitRecognizer = recognizer;
+				}
+			}
+		}
+		return recognizer;
+	}
+
+	private OcrResult recognize(ITesseract tesseract, BufferedImage image, OcrProfile profile, List<Rect> strips)
+			throws TesseractException {
+		profile.apply(tesseract);
+		if (profile.isStrips()) {
+			return recognizeRegions(tesseract, image, strips);
+		}
+		BufferedImage prepared = profile.prepare(image);
+		// Scaled by the source width, so an upscaling profile is not undone
+		Preprocessor.Result cleaned = preprocessor.apply(prepared, preprocessor.scaleFor(image.getWidth()));
+		BufferedImage input = cleaned.getImage();
+		OcrResult ocr = new OcrResult(bandedOcr != null && bandedOcr.shouldSplit(input)
+				? bandedOcr.getWords(input, profile)
+				: getWords(tesseract, input));
+		if (prepared == image && cleaned.getScale() == 1) {
+			return ocr;
+		}
+		List<Word> mapped = new ArrayList<>(ocr.getWords().size());
+		for (Word word : ocr.getWords()) {
+			Rectangle box = cleaned.toSource(word.getBoundingBox());
+			mapped.add(new Word(word.getText(), word.getConfidence(),
+					profile.toSource(box, image.getWidth(), image.getHeight())));
+		}
+		return ocr.withWords(mapped);
+	}
+
+	/**
+	 * OCRs only the given strips and shifts the word boxes back into full-image
+	 * coordinates. A {@link TessEngine} gets the cleaned strips stacked into one
+	 * image and recognizes them region by region on a single handle; any other
+	 * engine is called once per strip.
+	 */
+	public OcrResult recognizeRegions(ITesseract tesseract, BufferedImage image, List<Rect> strips)
+			throws TesseractException {
+		double scale = preprocessor.scaleFor(image.getWidth());
+		List<Preprocessor.Result> cleaned = new ArrayList<>(strips.size());
+		for (Rect strip : strips) {
+			cleaned.add(preprocessor.apply(image.getSubimage(strip.x, strip.y, strip.width, strip.height), scale));
+		}
+		if (!(tesseract instanceof TessEngine)) {
+			List<Word> words = new ArrayList<>();
+			for (int i = 0; i < strips.size(); i++) {
+				for (Word word : getWords(tesseract, cleaned.get(i).getImage())) {
+					words.add(toPage(word, word.getBoundingBox(), cleaned.get(i), strips.get(i)));
+				}
+			}
+			return new OcrResult(words);
+		}
+
+		List<Rectangle> regions = new ArrayList<>(strips.size());
+		int width = 1;
+		int height = 0;
+		int type = cleaned.isEmpty() ? BufferedImage.TYPE_BYTE_GRAY : cleaned.get(0).getImage().getType();
+		for (Preprocessor.Result strip : cleaned) {
+			BufferedImage cleanedStrip = strip.getImage();
+			regions.add(new Rectangle(0, height, cleanedStrip.getWidth(), cleanedStrip.getHeight()));
+			width = Math.max(width, cleanedStrip.getWidth());
+			height += cleanedStrip.getHeight();
+			if (cleanedStrip.getType() != type) {
+				type = BufferedImage.TYPE_INT_RGB;
+			}
+		}
+		if (regions.isEmpty()) {
+			return new OcrResult(Collections.<Word>emptyList());
+		}
+		BufferedImage stacked = new BufferedImage(width, height,
+				type == BufferedImage.TYPE_CUSTOM ? BufferedImage.TYPE_INT_RGB : type);
+		Graphics2D g2d = stacked.createGraphics();
+		for (int i = 0; i < regions.size(); i++) {
+			g2d.drawImage(cleaned.get(i).getImage(), 0, regions.get(i).y, null);
+		}
+		g2d.dispose();
+
+		List<Word> words = new ArrayList<>();
+		for (Word word : ((TessEngine) tesseract).getWords(stacked, regions, ITessAPI.TessPageIteratorLevel.RIL_WORD)) {
+			Rectangle box = word.getBoundingBox();
+			int i = regionAt(regions, box.y + box.height / 2);
+			Rectangle inStrip = new Rectangle(box.x, box.y - regions.get(i).y, box.width, box.height);
+			words.add(toPage(word, inStrip, cleaned.get(i), strips.get(i)));
+		}
+		return new OcrResult(words);
+	}
+
+	private static Word toPage(Word word, Rectangle inStrip, Preprocessor.Result cleaned, Rect strip) {
+		Rectangle box = cleaned.toSource(inStrip);
+		return new Word(word.getText(), word.getConfidence(),
+				new Rectangle(box.x + strip.x, box.y + strip.y, box.width, box.height));
+	}
+
+	/** Index of the stacked region holding row y, the last one for rows past the end. */
+	private static int regionAt(List<Rectangle> regions, int y) {
+		for (int i = 0; i < regions.size() - 1; i++) {
+			if (y < regions.get(i + 1).y) {
+				return i;
+			}
+		}
+		return regions.size() - 1;
+	}
+
+	private static List<Word> getWords(ITesseract tesseract, BufferedImage image) throws TesseractException {
+		checkInterrupted();
+		List<Word> words = tesseract.getWords(image, ITessAPI.TessPageIteratorLevel.RIL_WORD);
+		if (words == null) {
+			throw new TesseractException("Tesseract returned no result");
+		}
+		return words;
+	}
+
+	/**
+	 * Aborts the calling thread's work between Tesseract calls once it has been
+	 * interrupted. A single Tesseract call runs to completion, so cancellation
+	 * takes effect at the next strip or page.
+	 */
+	static void checkInterrupted() {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new CancellationException("Masking cancelled");
+		}
+	}
+
+	public String performOCR(ITesseract tesseract, BufferedImage image) throws TesseractException {
+		return extractAadhaarNumber(recognize(tesseract, image).getText());
+	}
+
+	/** First valid Aadhaar number or VID in the text, or an empty string. */
+	public String extractAadhaarNumber(String ocrResult) {
+		List<AadhaarScanner.Match> numbers = AadhaarScanner.scan(ocrResult);
+		return numbers.isEmpty() ? "" : numbers.get(0).getNumber();
+	}
+
+	/**
+	 * Masks the rectangle with the pipeline's policy directly in the image raster.
+	 * The image is modified in place and returned for convenience.
+	 */
+	public BufferedImage maskAadhaarNumber(BufferedImage image, Rect aadhaarRect) {
+		return maskEngine.paint(image, Collections.singletonList(aadhaarRect));
+	}
+
+	public Rect performOcrForPosition(OcrResult ocr, String aadhaarNumber) {
+		for (AadhaarScanner.Match number : AadhaarScanner.scan(ocr.getText())) {
+			if (number.getNumber().equals(aadhaarNumber)) {
+				Located located = locate(ocr, number, maskEngine.getPolicy().maskedDigits(number));
+				return located == null ? null : located.rect;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Box around the words holding the first {@code digits} digits of the number,
+	 * found through the character offsets the scanner reported.
+	 */
+	private Located locate(OcrResult ocr, AadhaarScanner.Match number, int digits) {
+		int from = number.getStart();
+		int to = number.getDigitOffset(digits - 1) + 1;
+		Rectangle box = null;
+		float confidence = 100;
+		List<Word> words = ocr.getWords();
+		for (int i = 0; i < words.size(); i++) {
+			int start = ocr.getWordOffset(i);
+			if (start >= to) {
+				break;
+			}
+			Word word = words.get(i);
+			if (start + word.getText().trim().length() <= from) {
+				continue;
+			}
+			box = box == null ? new Rectangle(word.getBoundingBox()) : box.union(word.getBoundingBox());
+			confidence = Math.min(confidence, word.getConfidence());
+		}
+
+		if (box == null) {
+			log.debug("No word covers the number among {} words", words.size());
+			return null;
+		}
+		log.debug("Located number digits at {}", box);
+		return new Located(new Rect(box.x, box.y, box.width, box.height), confidence);
+	}
+
+	private static final class Located {
+		final Rect rect;
+		final float confidence;
+
+		Located(Rect rect, float confidence) {
+			this.rect = rect;
+			this.confidence = confidence;
+		}
+	}
+
+	/** The caller owns the returned Mat and must release it. */
+	public Mat bufferedImageToMat(BufferedImage image) {
+		return MatBridge.toMat(image);
+	}
+
+	public BufferedImage matToBufferedImage(Mat mat) {
+		return MatBridge.toBufferedImage(mat);
+	}
+}
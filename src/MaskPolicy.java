@@ -0,0 +1,40 @@
+import java.util.Locale;
+
+/**
+ * What part of a detected number is hidden, and how.
+ */
+public enum MaskPolicy {
+
+	/**
+	 * Black box over all but the last four digits, as on a UIDAI masked Aadhaar:
+	 * the first eight digits of an Aadhaar number, the first twelve of a VID.
+	 */
+	FIRST_EIGHT_DIGITS,
+
+	/** Black box over the whole number. */
+	BLACK_BOX,
+
+	/** Coarse pixelation over the whole number. */
+	PIXELATE;
+
+	/**
+	 * The policy named by {@code aadhaar.mask.policy} / {@code AADHAAR_MASK_POLICY},
+	 * e.g. {@code black_box}, or {@link #FIRST_EIGHT_DIGITS} when unset.
+	 */
+	public static MaskPolicy configured() {
+		String name = Bootstrap.setting("aadhaar.mask.policy", "AADHAAR_MASK_POLICY");
+		if (name == null) {
+			return FIRST_EIGHT_DIGITS;
+		}
+		try {
+			return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+		} catch (IllegalArgumentException ex) {
+			throw new IllegalArgumentException("Unknown mask policy: " + name);
+		}
+	}
+
+	/** Number of leading digits of {@code match} this policy covers. */
+	public int maskedDigits(AadhaarScanner.Match match) {
+		return this == FIRST_EIGHT_DIGITS ? match.getDigitCount() - 4 : match.getDigitCount();
+	}
+}
@@ -0,0 +1,55 @@
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.opencv.core.Rect;
+
+/**
+ * Outcome of running one image through {@link MaskPipeline}.
+ */
+public class MaskResult {
+
+	private final BufferedImage image;
+	private final String aadhaarNumber;
+	private final List<Rect> regions;
+	private final Map<String, Long> stageNanos;
+
+	public MaskResult(BufferedImage image, String aadhaarNumber, List<Rect> regions, Map<String, Long> stageNanos) {
+		this.image = image;
+		this.aadhaarNumber = aadhaarNumber;
+		this.regions = Collections.unmodifiableList(regions);
+		this.stageNanos = Collections.unmodifiableMap(stageNanos);
+	}
+
+	public BufferedImage getImage() {
+		return image;
+	}
+
+	public String getAadhaarNumber() {
+		return aadhaarNumber;
+	}
+
+	/** Region of the first number found, or null when nothing was masked. */
+	public Rect getAadhaarRect() {
+		return regions.isEmpty() ? null : regions.get(0);
+	}
+
+	/** Every region that was masked, after overlapping boxes were merged. */
+	public List<Rect> getRegions() {
+		return regions;
+	}
+
+	/** Wall time spent in each pipeline stage, in the order the stages ran. */
+	public Map<String, Long> getStageNanos() {
+		return stageNanos;
+	}
+
+	public boolean isNumberFound() {
+		return aadhaarNumber != null && !aadhaarNumber.isEmpty();
+	}
+
+	public boolean isMasked() {
+		return !regions.isEmpty();
+	}
+}
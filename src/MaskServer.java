@@ -0,0 +1,321 @@
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.opencv.core.Rect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import net.sourceforge.tess4j.ITesseract;
+import net.sourceforge.tess4j.TesseractException;
+
+/**
+ * Embedded HTTP front end for {@link MaskPipeline}, bound to the loopback
+ * interface only.
+ *
+ * POST /mask with the image as the request body. The response body is the
+ * masked image (PNG by default, {@code ?format=jpeg} for JPEG) and the
+ * {@code X-Mask-Metadata} header carries JSON with the masked boxes, the
+ * redacted number and per-stage timings. At most twice as many requests as
+ * there are engines are admitted at once, checked before the body is read, so
+ * decoded uploads stay bounded; the rest get 429 straight away. Admitted
+ * requests wait for an engine once their upload is decoded. A body that cannot
+ * be read as an image gets 400 or 415.
+ *
+ * GET /metrics returns the {@link Metrics} registry in the Prometheus text
+ * format.
+ *
+ * Usage: MaskServer [port] [engines]
+ */
+public class MaskServer {
+
+	private static final Logger log = LoggerFactory.getLogger(MaskServer.class);
+
+	public static final int DEFAULT_PORT = 8089;
+
+	// Requests the fallback pool had no room for; their handler only answers 503
+	private static final ThreadLocal<Boolean> SHEDDING = ThreadLocal.withInitial(() -> Boolean.FALSE);
+	private static final ExecutorService SHEDDER = Executors.newSingleThreadExecutor(task -> {
+		Thread thread = new Thread(task, "mask-shed");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final MaskPipeline pipeline = new MaskPipeline();
+	private final OcrEnginePool engines;
+	private final Semaphore admission;
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	public MaskServer(int port, OcrEnginePool engines) throws IOException {
+		this.engines = engines;
+		// Twice the engines, so uploads are read and decoded while every engine is busy
+		this.admission = new Semaphore(engines.size() * 2);
+		this.executor = newRequestExecutor(engines.size());
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		this.server.createContext("/mask", this::handleMask);
+		this.server.createContext("/metrics", this::handleMetrics);
+		this.server.setExecutor(executor);
+		Metrics.gauge("ocr_engines_available", engines::available);
+	}
+
+	/** Runs the {@link Bootstrap} warm-up on this server's pipeline and engines. */
+	public void warmUp() throws InterruptedException, TesseractException {
+		Bootstrap.warmUp(pipeline, engines);
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdown();
+		engines.shutdown();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	private void handleMask(HttpExchange exchange) throws IOException {
+		try {
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				sendError(exchange, 405, "Use POST");
+				return;
+			}
+			OutputWriter.Format format = "jpeg".equalsIgnoreCase(queryParameter(exchange, "format"))
+					? new OutputWriter.Format("jpeg", null, -1)
+					: OutputWriter.Format.PNG;
+
+			if (SHEDDING.get()) {
+				reject(exchange, 503, "Server overloaded");
+				return;
+			}
+			if (!admission.tryAcquire()) {
+				reject(exchange, 429, "Too many requests in progress");
+				return;
+			}
+			try {
+				Map<String, Long> stageNanos = new LinkedHashMap<>();
+				MaskResult result = mask(exchange, stageNanos);
+				if (result != null) {
+					respond(exchange, result, format, stageNanos);
+				}
+			} finally {
+				admission.release();
+			}
+		} catch (TesseractException | RuntimeException ex) {
+			log.error("Masking failed", ex);
+			sendError(exchange, 500, "Masking failed");
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static void respond(HttpExchange exchange, MaskResult result, OutputWriter.Format format,
+			Map<String, Long> stageNanos) throws IOException {
+		Metrics.Stopwatch watch = Metrics.stopwatch();
+		ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+		try {
+			format.encode(result.getImage(), encoded);
+		} catch (IOException ex) {
+			log.error("Encoding as {} failed", format, ex);
+			sendError(exchange, 500, "Encoding failed");
+			return;
+		}
+		stageNanos.put("encode", watch.lap("encode"));
+
+		exchange.getResponseHeaders().set("Content-Type", "image/" + format.getName());
+		exchange.getResponseHeaders().set("X-Mask-Metadata", toJson(result, stageNanos));
+		exchange.sendResponseHeaders(200, encoded.size());
+		try (OutputStream body = exchange.getResponseBody()) {
+			encoded.writeTo(body);
+		}
+	}
+
+	/** Decodes the upload and masks it on a pooled engine; null once an error has been sent. */
+	private MaskResult mask(HttpExchange exchange, Map<String, Long> stageNanos)
+			throws IOException, TesseractException {
+		Metrics.Stopwatch watch = Metrics.stopwatch();
+		BufferedImage image;
+		try {
+			image = ImageIO.read(exchange.getRequestBody());
+		} catch (IOException ex) {
+			sendError(exchange, 400, "Unreadable image: " + ex.getMessage());
+			return null;
+		}
+		stageNanos.put("decode", watch.lap("decode"));
+		if (image == null) {
+			sendError(exchange, 415, "Unsupported or missing image");
+			return null;
+		}
+
+		// The engine is taken after the upload, so a slow client never holds one
+		ITesseract tesseract;
+		try {
+			tesseract = engines.borrow();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			sendError(exchange, 503, "Server shutting down");
+			return null;
+		}
+		MaskResult result;
+		try {
+			result = pipeline.process(tesseract, image);
+		} finally {
+			engines.release(tesseract);
+		}
+		stageNanos.putAll(result.getStageNanos());
+		return result;
+	}
+
+	private static void reject(HttpExchange exchange, int status, String message) throws IOException {
+		Metrics.increment("http_requests_rejected_total", 1);
+		exchange.getResponseHeaders().set("Retry-After", "1");
+		sendError(exchange, status, message);
+	}
+
+	private void handleMetrics(HttpExchange exchange) throws IOException {
+		try {
+			byte[] body = Metrics.prometheus().getBytes("UTF-8");
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	static String toJson(MaskResult result, Map<String, Long> stageNanos) {
+		StringBuilder json = new StringBuilder("{");
+		json.append("\"numberFound\":").append(result.isNumberFound());
+		json.append(",\"masked\":").append(result.isMasked());
+		if (result.isNumberFound()) {
+			json.append(",\"number\":\"").append(redact(result.getAadhaarNumber())).append('"');
+		}
+		json.append(",\"boxes\":[");
+		for (int i = 0; i < result.getRegions().size(); i++) {
+			Rect rect = result.getRegions().get(i);
+			if (i > 0) {
+				json.append(',');
+			}
+			json.append(String.format(Locale.ROOT, "{\"x\":%d,\"y\":%d,\"width\":%d,\"height\":%d}", rect.x, rect.y,
+					rect.width, rect.height));
+		}
+		json.append("],\"timingsMs\":{");
+		boolean first = true;
+		for (Map.Entry<String, Long> stage : stageNanos.entrySet()) {
+			if (!first) {
+				json.append(',');
+			}
+			json.append('"').append(stage.getKey()).append("\":")
+					.append(String.format(Locale.ROOT, "%.3f", stage.getValue() / 1e6));
+			first = false;
+		}
+		return json.append("}}").toString();
+	}
+
+	/** Keeps only the last four digits, e.g. "XXXX XXXX 9012". */
+	static String redact(String number) {
+		StringBuilder redacted = new StringBuilder(number.length());
+		int digitsLeft = 0;
+		for (int i = 0; i < number.length(); i++) {
+			if (Character.isDigit(number.charAt(i))) {
+				digitsLeft++;
+			}
+		}
+		for (int i = 0; i < number.length(); i++) {
+			char c = number.charAt(i);
+			if (Character.isDigit(c)) {
+				redacted.append(digitsLeft-- > 4 ? 'X' : c);
+			} else {
+				redacted.append(c);
+			}
+		}
+		return redacted.toString();
+	}
+
+	private static String queryParameter(HttpExchange exchange, String name) {
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query == null) {
+			return null;
+		}
+		for (String pair : query.split("&")) {
+			int eq = pair.indexOf('=');
+			if (eq > 0 && pair.substring(0, eq).equals(name)) {
+				return pair.substring(eq + 1);
+			}
+		}
+		return null;
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		byte[] body = (message + "\n").getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/**
+	 * Uses a virtual thread per request when the runtime provides them (JDK 21+).
+	 * On older runtimes falls back to a platform pool with a bounded queue; when
+	 * even the queue is full the request is passed to a single shedding thread
+	 * that answers 503 without reading the body, so the dispatcher never runs a
+	 * handler itself. Admission is governed by the admission permits either way.
+	 */
+	private static ExecutorService newRequestExecutor(int engines) {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException ex) {
+			// One thread per admission permit; the excess waits briefly in the queue for its 429
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(engines * 2, engines * 2, 30, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<Runnable>(engines * 8), (task, pool) -> SHEDDER.execute(() -> {
+						SHEDDING.set(Boolean.TRUE);
+						try {
+							task.run();
+						} finally {
+							SHEDDING.remove();
+						}
+					}));
+			executor.allowCoreThreadTimeOut(true);
+			return executor;
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException, TesseractException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+		Bootstrap.loadNatives();
+
+		// Warm up before binding, so a load balancer never routes to a cold instance
+		MaskServer server = new MaskServer(port, new OcrEnginePool(threads));
+		server.warmUp();
+		server.start();
+		Bootstrap.ready();
+		Metrics.startPeriodicLog(60);
+		log.info("Masking service listening on http://localhost:{}/mask", server.getPort());
+	}
+}
@@ -0,0 +1,97 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import net.sourceforge.tess4j.ITesseract;
+import net.sourceforge.tess4j.TesseractException;
+
+/**
+ * One worker process under {@link WorkerSupervisor}. It masks one file at a
+ * time with its own engine, so a native crash takes down this process and the
+ * single file in it, nothing else.
+ *
+ * The protocol is line based and UTF-8. The worker prints {@code ready\t<rss>}
+ * once warmed up, then reads {@code <id>\t<inputPath>} jobs from stdin and
+ * answers each with {@code <id>\t<status>\t<rss>\t<detail>}, where status is
+ * {@code masked}, {@code unmasked} or {@code failed}, rss is its resident set
+ * in bytes (-1 if unknown) and detail is the output path or the error. It exits
+ * when stdin is closed. Logging goes to stderr.
+ *
+ * Usage: MaskWorker &lt;outputDir&gt;
+ */
+public final class MaskWorker {
+
+	private final MaskPipeline pipeline = new MaskPipeline();
+	private final PyramidMasker pyramid = new PyramidMasker(pipeline);
+	private final OutputWriter.Format format = OutputWriter.Format.configured();
+	private final ITesseract tesseract = Bootstrap.newEngine();
+	private final File outputDir;
+
+	public MaskWorker(File outputDir) {
+		this.outputDir = outputDir;
+	}
+
+	/** Masks one file and returns the reply line for it, without the id. */
+	public String process(File input) {
+		try {
+			if (MultiPageMasker.isMultiPageFormat(input)) {
+				File output = OutputLocation.unique(outputDir, OutputLocation.baseName(input) + "_masked", "tif");
+				MultiPageMasker.Summary summary = new MultiPageMasker(pipeline).mask(input, output, tesseract);
+				return reply(summary.getMaskedPages() > 0 ? "masked" : "unmasked", output.getPath());
+			}
+			MaskResult result = pyramid.mask(input, tesseract);
+			File output = format.write(result.getImage(), outputDir, OutputLocation.baseName(input) + "_masked");
+			return reply(result.isMasked() ? "masked" : "unmasked", output.getPath());
+		} catch (IOException | TesseractException | RuntimeException ex) {
+			return reply("failed", String.valueOf(ex));
+		}
+	}
+
+	private static String reply(String status, String detail) {
+		return status + "\t" + residentBytes() + "\t" + detail.replaceAll("[\t\r\n]+", " ");
+	}
+
+	/** Resident set size of this process from /proc, or -1 where that is not available. */
+	static long residentBytes() {
+		try {
+			for (String line : Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.UTF_8)) {
+				if (line.startsWith("VmRSS:")) {
+					return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+				}
+			}
+		} catch (IOException | RuntimeException ex) {
+			// Not Linux, or no procfs
+		}
+		return -1;
+	}
+
+	public static void main(String[] args) throws IOException, TesseractException {
+		// stdout carries the protocol; anything else printed there would corrupt it
+		PrintStream replies = new PrintStream(System.out, true, "UTF-8");
+		System.setOut(System.err);
+		if (args.length < 1) {
+			System.err.println("Usage: MaskWorker <outputDir>");
+			System.exit(2);
+		}
+
+		Bootstrap.loadNatives();
+		MaskWorker worker = new MaskWorker(new File(args[0]));
+		Bootstrap.warmUp(worker.pipeline, worker.tesseract);
+		replies.println("ready\t" + residentBytes());
+
+		BufferedReader jobs = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+		String line;
+		while ((line = jobs.readLine()) != null) {
+			int tab = line.indexOf('\t');
+			if (tab < 0) {
+				continue;
+			}
+			replies.println(line.substring(0, tab) + "\t" + worker.process(new File(line.substring(tab + 1))));
+		}
+	}
+}
@@ -0,0 +1,166 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.util.Collections;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Conversions between Java2D rasters and OpenCV Mats.
+ *
+ * Byte-interleaved BGR and gray images are copied straight from their backing
+ * array into the Mat; packed int and ABGR rasters are swizzled a row at a time
+ * through a small per-thread row buffer, so no full-frame intermediate array is
+ * allocated. Callers that process many images can pass a destination Mat or
+ * image back in and have its memory reused when the size and type match;
+ * {@link #matType} gives the shape to lease one from a {@link MatPool}.
+ */
+public final class MatBridge {
+
+	// Read-only after construction, so one native copy serves every thread
+	private static final MatOfInt ABGR_TO_BGR = new MatOfInt(1, 0, 2, 1, 3, 2);
+
+	private static final ThreadLocal<byte[]> ROW_BUFFER = new ThreadLocal<>();
+
+	private MatBridge() {
+	}
+
+	/** The Mat type {@link #toMat(BufferedImage, Mat)} produces for this image. */
+	public static int matType(BufferedImage image) {
+		return image.getColorModel().getNumColorComponents() == 1 ? CvType.CV_8UC1 : CvType.CV_8UC3;
+	}
+
+	/** A new Mat owned by the caller, who releases it or hands it to a {@link MatScope}. */
+	public static Mat toMat(BufferedImage image) {
+		return toMat(image, new Mat());
+	}
+
+	/**
+	 * Converts the image into {@code dst}, reallocating its native buffer only if
+	 * the size or type differs. Colour images become CV_8UC3 (BGR), gray images
+	 * CV_8UC1; alpha is dropped.
+	 */
+	public static Mat toMat(BufferedImage image, Mat dst) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		Raster raster = image.getRaster();
+		boolean compact = raster.getParent() == null && raster.getMinX() == 0 && raster.getMinY() == 0;
+
+		switch (compact ? image.getType() : BufferedImage.TYPE_CUSTOM) {
+		case BufferedImage.TYPE_3BYTE_BGR:
+			create(dst, height, width, CvType.CV_8UC3);
+			dst.put(0, 0, ((DataBufferByte) raster.getDataBuffer()).getData());
+			return dst;
+		case BufferedImage.TYPE_BYTE_GRAY:
+			create(dst, height, width, CvType.CV_8UC1);
+			dst.put(0, 0, ((DataBufferByte) raster.getDataBuffer()).getData());
+			return dst;
+		case BufferedImage.TYPE_4BYTE_ABGR:
+		case BufferedImage.TYPE_4BYTE_ABGR_PRE:
+			Mat abgr = MatPool.SHARED.acquire(height, width, CvType.CV_8UC4);
+			try {
+				abgr.put(0, 0, ((DataBufferByte) raster.getDataBuffer()).getData());
+				// Memory order is A,B,G,R; drop alpha by reading channels 1..3 as BGR
+				create(dst, height, width, CvType.CV_8UC3);
+				Core.mixChannels(Collections.singletonList(abgr), Collections.singletonList(dst),
+						ABGR_TO_BGR);
+			} finally {
+				MatPool.SHARED.release(abgr);
+			}
+			return dst;
+		case BufferedImage.TYPE_INT_RGB:
+		case BufferedImage.TYPE_INT_ARGB:
+		case BufferedImage.TYPE_INT_ARGB_PRE:
+			putPackedInts(((DataBufferInt) raster.getDataBuffer()).getData(), width, height, dst, false);
+			return dst;
+		case BufferedImage.TYPE_INT_BGR:
+			putPackedInts(((DataBufferInt) raster.getDataBuffer()).getData(), width, height, dst, true);
+			return dst;
+		default:
+			// Indexed, 16-bit, binary and sub-image rasters: redraw once into a layout we can copy
+			boolean gray = image.getColorModel().getNumColorComponents() == 1;
+			BufferedImage converted = new BufferedImage(width, height,
+					gray ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_3BYTE_BGR);
+			Graphics2D g2d = converted.createGraphics();
+			g2d.drawImage(image, 0, 0, null);
+			g2d.dispose();
+			return toMat(converted, dst);
+		}
+	}
+
+	private static void putPackedInts(int[] pixels, int width, int height, Mat dst, boolean bgr) {
+		create(dst, height, width, CvType.CV_8UC3);
+		byte[] row = rowBuffer(width * 3);
+		for (int y = 0, offset = 0; y < height; y++) {
+			for (int x = 0, i = 0; x < width; x++, offset++) {
+				int pixel = pixels[offset];
+				int r = bgr ? pixel : pixel >> 16;
+				int b = bgr ? pixel >> 16 : pixel;
+				row[i++] = (byte) b;
+				row[i++] = (byte) (pixel >> 8);
+				row[i++] = (byte) r;
+			}
+			dst.put(y, 0, row);
+		}
+	}
+
+	public static BufferedImage toBufferedImage(Mat mat) {
+		return toBufferedImage(mat, null);
+	}
+
+	/**
+	 * Copies the Mat into {@code reuse} when it has the matching size and layout,
+	 * otherwise into a new image. The native data is read straight into the
+	 * image's backing array, with no intermediate buffer.
+	 */
+	public static BufferedImage toBufferedImage(Mat mat, BufferedImage reuse) {
+		Mat source = mat;
+		if (mat.channels() == 4) {
+			source = MatPool.SHARED.acquire(mat.rows(), mat.cols(), CvType.CV_8UC3);
+			Imgproc.cvtColor(mat, source, Imgproc.COLOR_BGRA2BGR);
+		} else if (!mat.isContinuous()) {
+			source = mat.clone();
+		}
+
+		try {
+			int type = source.channels() > 1 ? BufferedImage.TYPE_3BYTE_BGR : BufferedImage.TYPE_BYTE_GRAY;
+			BufferedImage image = reuse;
+			if (image == null || image.getType() != type || image.getWidth() != source.cols()
+					|| image.getHeight() != source.rows() || image.getRaster().getParent() != null) {
+				image = new BufferedImage(source.cols(), source.rows(), type);
+			}
+			source.get(0, 0, ((DataBufferByte) image.getRaster().getDataBuffer()).getData());
+			return image;
+		} finally {
+			if (mat.channels() == 4) {
+				MatPool.SHARED.release(source);
+			} else if (source != mat) {
+				MatScope.free(source);
+			}
+		}
+	}
+
+	/** {@link Mat#create} that counts the native bytes whenever it has to reallocate. */
+	static void create(Mat mat, int rows, int cols, int type) {
+		long before = mat.dataAddr();
+		mat.create(rows, cols, type);
+		if (mat.dataAddr() != before) {
+			Metrics.increment("mat_native_allocated_bytes_total", mat.total() * mat.elemSize());
+		}
+	}
+
+	private static byte[] rowBuffer(int size) {
+		byte[] buffer = ROW_BUFFER.get();
+		if (buffer == null || buffer.length != size) {
+			buffer = new byte[size];
+			ROW_BUFFER.set(buffer);
+		}
+		return buffer;
+	}
+}
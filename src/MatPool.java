@@ -0,0 +1,116 @@
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opencv.core.Mat;
+
+/**
+ * Recycles native Mat buffers by size and type, so a batch of same-sized
+ * scans reuses the same few working images instead of allocating and
+ * freeing native memory for every stage of every page.
+ *
+ * The pool keeps at most a few idle Mats per shape and a bounded total of
+ * idle bytes; anything beyond that is released at once. Mats are normally
+ * borrowed through a {@link MatScope}, which hands them back on close.
+ */
+public final class MatPool {
+
+	public static final int DEFAULT_MAX_IDLE_PER_SHAPE = 4;
+	public static final long DEFAULT_MAX_IDLE_BYTES = 256L * 1024 * 1024;
+
+	/** Shared by every {@link MatScope} that is not given its own pool. */
+	public static final MatPool SHARED = new MatPool(DEFAULT_MAX_IDLE_PER_SHAPE, DEFAULT_MAX_IDLE_BYTES);
+
+	static {
+		Metrics.gauge("mat_pool_idle_bytes", SHARED::idleBytes);
+	}
+
+	private final Map<Shape, Deque<Mat>> idle = new ConcurrentHashMap<>();
+	private final AtomicLong idleBytes = new AtomicLong();
+	private final int maxIdlePerShape;
+	private final long maxIdleBytes;
+
+	public MatPool(int maxIdlePerShape, long maxIdleBytes) {
+		this.maxIdlePerShape = maxIdlePerShape;
+		this.maxIdleBytes = maxIdleBytes;
+	}
+
+	/** A Mat of exactly this shape. Its contents are undefined. */
+	public Mat acquire(int rows, int cols, int type) {
+		Deque<Mat> free = idle.get(new Shape(rows, cols, type));
+		Mat mat = free == null ? null : free.pollFirst();
+		if (mat != null) {
+			idleBytes.addAndGet(-MatScope.bytes(mat));
+			Metrics.increment("mat_pool_hits_total", 1);
+			return mat;
+		}
+		Metrics.increment("mat_pool_misses_total", 1);
+		mat = new Mat();
+		MatBridge.create(mat, rows, cols, type);
+		return mat;
+	}
+
+	/**
+	 * Takes the Mat back for reuse, keyed by its current shape (an OpenCV call
+	 * may have reallocated it since it was acquired), or releases it when the
+	 * pool is full.
+	 */
+	public void release(Mat mat) {
+		if (mat.empty() || mat.isSubmatrix() || !mat.isContinuous()) {
+			MatScope.free(mat);
+			return;
+		}
+		long bytes = MatScope.bytes(mat);
+		Deque<Mat> free = idle.computeIfAbsent(new Shape(mat.rows(), mat.cols(), mat.type()),
+				shape -> new ConcurrentLinkedDeque<>());
+		if (free.size() >= maxIdlePerShape || idleBytes.get() + bytes > maxIdleBytes) {
+			MatScope.free(mat);
+			return;
+		}
+		idleBytes.addAndGet(bytes);
+		free.offerFirst(mat);
+	}
+
+	/** Releases every idle Mat. */
+	public void clear() {
+		for (Deque<Mat> free : idle.values()) {
+			Mat mat;
+			while ((mat = free.pollFirst()) != null) {
+				idleBytes.addAndGet(-MatScope.bytes(mat));
+				MatScope.free(mat);
+			}
+		}
+	}
+
+	public long idleBytes() {
+		return idleBytes.get();
+	}
+
+	private static final class Shape {
+		private final int rows;
+		private final int cols;
+		private final int type;
+
+		Shape(int rows, int cols, int type) {
+			this.rows = rows;
+			this.cols = cols;
+			this.type = type;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Shape)) {
+				return false;
+			}
+			Shape shape = (Shape) other;
+			return rows == shape.rows && cols == shape.cols && type == shape.type;
+		}
+
+		@Override
+		public int hashCode() {
+			return (rows * 31 + cols) * 31 + type;
+		}
+	}
+}
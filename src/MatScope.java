@@ -0,0 +1,108 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.opencv.core.Mat;
+
+/**
+ * Owns the native Mats of one unit of work and frees them when closed:
+ *
+ * <pre>
+ * try (MatScope scope = new MatScope()) {
+ *     Mat gray = scope.acquire(image.rows(), image.cols(), CvType.CV_8UC1);
+ *     Imgproc.cvtColor(image, gray, Imgproc.COLOR_BGR2GRAY);
+ *     ...
+ * }
+ * </pre>
+ *
+ * A Mat's native buffer is otherwise only freed when the garbage collector
+ * finalizes it, which a small Java heap may not do for a long time while the
+ * native side keeps growing. Pooled Mats go back to their {@link MatPool};
+ * everything else is released. The bytes held by open scopes and the pool are
+ * exported as {@code mat_native_live_bytes}; a process that leaks shows it
+ * rising.
+ *
+ * A scope belongs to one thread and is not safe to share.
+ */
+public final class MatScope implements AutoCloseable {
+
+	private static final Set<Mat> LIVE = Collections.newSetFromMap(new ConcurrentHashMap<Mat, Boolean>());
+
+	static {
+		Metrics.gauge("mat_native_live_bytes",
+				() -> liveBytes() + MatPool.SHARED.idleBytes());
+	}
+
+	private final MatPool pool;
+	private final List<Mat> owned = new ArrayList<>();
+	private final List<Mat> borrowed = new ArrayList<>();
+
+	public MatScope() {
+		this(MatPool.SHARED);
+	}
+
+	public MatScope(MatPool pool) {
+		this.pool = pool;
+	}
+
+	/** An empty Mat for OpenCV to allocate into, released on close. */
+	public Mat mat() {
+		return track(new Mat());
+	}
+
+	/**
+	 * A pooled Mat of this shape, returned to the pool on close. Its contents
+	 * are undefined. Use it for outputs whose size is known up front.
+	 */
+	public Mat acquire(int rows, int cols, int type) {
+		Mat mat = pool.acquire(rows, cols, type);
+		borrowed.add(mat);
+		LIVE.add(mat);
+		return mat;
+	}
+
+	/** Takes ownership of a Mat made elsewhere, such as a submat header or a MatOf* value. */
+	public <T extends Mat> T track(T mat) {
+		owned.add(mat);
+		LIVE.add(mat);
+		return mat;
+	}
+
+	@Override
+	public void close() {
+		for (Mat mat : owned) {
+			LIVE.remove(mat);
+			free(mat);
+		}
+		for (Mat mat : borrowed) {
+			LIVE.remove(mat);
+			pool.release(mat);
+		}
+		owned.clear();
+		borrowed.clear();
+	}
+
+	/** Bytes of native memory held by Mats in open scopes; submat headers count nothing. */
+	static long liveBytes() {
+		long bytes = 0;
+		for (Mat mat : LIVE) {
+			bytes += bytes(mat);
+		}
+		return bytes;
+	}
+
+	static long bytes(Mat mat) {
+		return mat.isSubmatrix() ? 0 : mat.total() * mat.elemSize();
+	}
+
+	/** Releases the native buffer now, counting it against {@code mat_native_allocated_bytes_total}. */
+	static void free(Mat mat) {
+		long bytes = bytes(mat);
+		if (bytes > 0) {
+			Metrics.increment("mat_native_released_bytes_total", bytes);
+		}
+		mat.release();
+	}
+}
@@ -0,0 +1,235 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process-wide stage timers, counters and gauges.
+ *
+ * Recording is a handful of {@link LongAdder} increments, so it is cheap enough
+ * to leave on in production. Each stage keeps a fixed-bucket latency histogram
+ * and the bytes the recording thread allocated during the stage. The registry
+ * can be rendered in the Prometheus text format or as a one-line summary for
+ * the periodic log.
+ */
+public final class Metrics {
+
+	private static final Logger log = LoggerFactory.getLogger(Metrics.class);
+
+	private static final double[] BUCKETS_SECONDS = { 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5,
+			5, 10 };
+
+	private static final Map<String, Timer> TIMERS = new ConcurrentSkipListMap<>();
+	private static final Map<String, LongAdder> COUNTERS = new ConcurrentSkipListMap<>();
+	private static final Map<String, LongSupplier> GAUGES = new ConcurrentSkipListMap<>();
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+	private static final boolean ALLOCATION_SUPPORTED = THREADS instanceof com.sun.management.ThreadMXBean
+			&& ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemorySupported();
+
+	private static ScheduledExecutorService periodicLog;
+
+	private Metrics() {
+	}
+
+	public static Timer timer(String stage) {
+		Timer timer = TIMERS.get(stage);
+		if (timer == null) {
+			Timer created = new Timer();
+			timer = TIMERS.putIfAbsent(stage, created);
+			if (timer == null) {
+				timer = created;
+			}
+		}
+		return timer;
+	}
+
+	/**
+	 * Adds to a counter. The name may carry Prometheus labels, e.g.
+	 * {@code ocr_profile_runs_total{profile="digits"}}.
+	 */
+	public static void increment(String counter, long delta) {
+		LongAdder adder = COUNTERS.get(counter);
+		if (adder == null) {
+			LongAdder created = new LongAdder();
+			adder = COUNTERS.putIfAbsent(counter, created);
+			if (adder == null) {
+				adder = created;
+			}
+		}
+		adder.add(delta);
+	}
+
+	public static void gauge(String name, LongSupplier value) {
+		GAUGES.put(name, value);
+	}
+
+	public static Stopwatch stopwatch() {
+		return new Stopwatch();
+	}
+
+	/** Bytes allocated so far by the calling thread, or 0 if the JVM cannot tell. */
+	static long allocatedBytes() {
+		return ALLOCATION_SUPPORTED
+				? ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId())
+				: 0;
+	}
+
+	public static String prometheus() {
+		StringBuilder out = new StringBuilder();
+		out.append("# TYPE aadhaar_stage_seconds histogram\n");
+		for (Map.Entry<String, Timer> entry : TIMERS.entrySet()) {
+			String stage = entry.getKey();
+			Timer timer = entry.getValue();
+			long cumulative = 0;
+			for (int i = 0; i < BUCKETS_SECONDS.length; i++) {
+				cumulative += timer.buckets[i].sum();
+				out.append(String.format(Locale.ROOT, "aadhaar_stage_seconds_bucket{stage=\"%s\",le=\"%s\"} %d\n", stage,
+						BUCKETS_SECONDS[i], cumulative));
+			}
+			cumulative += timer.buckets[BUCKETS_SECONDS.length].sum();
+			out.append(String.format(Locale.ROOT, "aadhaar_stage_seconds_bucket{stage=\"%s\",le=\"+Inf\"} %d\n", stage,
+					cumulative));
+			out.append(String.format(Locale.ROOT, "aadhaar_stage_seconds_sum{stage=\"%s\"} %.6f\n", stage,
+					timer.totalNanos.sum() / 1e9));
+			out.append(String.format(Locale.ROOT, "aadhaar_stage_seconds_count{stage=\"%s\"} %d\n", stage,
+					timer.count.sum()));
+		}
+		out.append("# TYPE aadhaar_stage_allocated_bytes_total counter\n");
+		for (Map.Entry<String, Timer> entry : TIMERS.entrySet()) {
+			out.append(String.format(Locale.ROOT, "aadhaar_stage_allocated_bytes_total{stage=\"%s\"} %d\n",
+					entry.getKey(), entry.getValue().allocatedBytes.sum()));
+		}
+
+		String lastType = null;
+		for (Map.Entry<String, LongAdder> entry : COUNTERS.entrySet()) {
+			String name = baseName(entry.getKey());
+			if (!name.equals(lastType)) {
+				out.append("# TYPE ").append(name).append(" counter\n");
+				lastType = name;
+			}
+			out.append(entry.getKey()).append(' ').append(entry.getValue().sum()).append('\n');
+		}
+		for (Map.Entry<String, LongSupplier> entry : GAUGES.entrySet()) {
+			out.append("# TYPE ").append(baseName(entry.getKey())).append(" gauge\n");
+			out.append(entry.getKey()).append(' ').append(entry.getValue().getAsLong()).append('\n');
+		}
+		return out.toString();
+	}
+
+	/** Compact one-line view: count and approximate p50/p99 per stage, then gauges. */
+	public static String summaryLine() {
+		StringBuilder line = new StringBuilder("metrics");
+		for (Map.Entry<String, Timer> entry : TIMERS.entrySet()) {
+			Timer timer = entry.getValue();
+			line.append(String.format(Locale.ROOT, " %s[n=%d p50<=%sms p99<=%sms]", entry.getKey(), timer.count.sum(),
+					formatBound(timer.quantileUpperBound(0.50)), formatBound(timer.quantileUpperBound(0.99))));
+		}
+		for (Map.Entry<String, LongSupplier> entry : GAUGES.entrySet()) {
+			line.append(' ').append(entry.getKey()).append('=').append(entry.getValue().getAsLong());
+		}
+		return line.toString();
+	}
+
+	/** Starts logging {@link #summaryLine()} at INFO every {@code periodSeconds}; idempotent. */
+	public static synchronized void startPeriodicLog(long periodSeconds) {
+		if (periodicLog != null) {
+			return;
+		}
+		periodicLog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "metrics-log");
+			thread.setDaemon(true);
+			return thread;
+		});
+		periodicLog.scheduleAtFixedRate(() -> log.info(summaryLine()), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+	}
+
+	private static String formatBound(double seconds) {
+		return Double.isInfinite(seconds) ? "inf" : String.format(Locale.ROOT, "%.0f", seconds * 1000);
+	}
+
+	private static String baseName(String series) {
+		int brace = series.indexOf('{');
+		return brace < 0 ? series : series.substring(0, brace);
+	}
+
+	public static final class Timer {
+		private final LongAdder[] buckets = new LongAdder[BUCKETS_SECONDS.length + 1];
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final LongAdder allocatedBytes = new LongAdder();
+
+		private Timer() {
+			for (int i = 0; i < buckets.length; i++) {
+				buckets[i] = new LongAdder();
+			}
+		}
+
+		public void record(long nanos, long bytes) {
+			double seconds = nanos / 1e9;
+			int bucket = 0;
+			while (bucket < BUCKETS_SECONDS.length && seconds > BUCKETS_SECONDS[bucket]) {
+				bucket++;
+			}
+			buckets[bucket].increment();
+			count.increment();
+			totalNanos.add(nanos);
+			allocatedBytes.add(bytes);
+		}
+
+		public long count() {
+			return count.sum();
+		}
+
+		/** Upper bound of the histogram bucket holding the given quantile. */
+		double quantileUpperBound(double quantile) {
+			long total = count.sum();
+			if (total == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(quantile * total);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS_SECONDS.length; i++) {
+				seen += buckets[i].sum();
+				if (seen >= rank) {
+					return BUCKETS_SECONDS[i];
+				}
+			}
+			return Double.POSITIVE_INFINITY;
+		}
+	}
+
+	/**
+	 * Times consecutive stages on one thread. Each {@link #lap(String)} records
+	 * the time and allocation since the previous lap under the given stage name.
+	 */
+	public static final class Stopwatch {
+		private long lastNanos = System.nanoTime();
+		private long lastAllocated = allocatedBytes();
+
+		/** Starts the next lap now, discarding the time since the last one. */
+		public void restart() {
+			lastNanos = System.nanoTime();
+			lastAllocated = allocatedBytes();
+		}
+
+		public long lap(String stage) {
+			long now = System.nanoTime();
+			long allocated = allocatedBytes();
+			long nanos = now - lastNanos;
+			timer(stage).record(nanos, allocated - lastAllocated);
+			lastNanos = now;
+			lastAllocated = allocated;
+			return nanos;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Locale;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import net.sourceforge.tess4j.ITesseract;
+import net.sourceforge.tess4j.TesseractException;
+
+/**
+ * Masks multi-page documents one page at a time. Pages are decoded lazily from
+ * a forward-only {@link ImageReader} and appended to a multi-page TIFF through
+ * {@link ImageWriter#writeToSequence}, so only the page being processed is held
+ * in memory regardless of document length.
+ *
+ * TIFF input is handled by the bundled jai-imageio plugin. PDF input works when
+ * an ImageIO reader for PDF is on the classpath.
+ */
+public class MultiPageMasker {
+
+	private static final String[] MULTI_PAGE_EXTENSIONS = { ".tif", ".tiff", ".pdf" };
+
+	private final MaskPipeline pipeline;
+
+	public MultiPageMasker(MaskPipeline pipeline) {
+		this.pipeline = pipeline;
+	}
+
+	public static boolean isMultiPageFormat(File file) {
+		String name = file.getName().toLowerCase(Locale.ROOT);
+		for (String extension : MULTI_PAGE_EXTENSIONS) {
+			if (name.endsWith(extension)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Number of pages in the document; walks the page directory without decoding pixels. */
+	public static int countPages(File input) throws IOException {
+		try (ImageInputStream in = ImageIO.createImageInputStream(input)) {
+			ImageReader reader = openReader(in, input);
+			try {
+				reader.setInput(in, false, true);
+				return reader.getNumImages(true);
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Masks every page of {@code input} and writes them, in order, to a
+	 * multi-page TIFF at {@code output}.
+	 */
+	public Summary mask(File input, File output, ITesseract tesseract) throws IOException, TesseractException {
+		ImageWriter writer = tiffWriter();
+		int pages = 0;
+		int masked = 0;
+		try (ImageInputStream in = ImageIO.createImageInputStream(input);
+				ImageOutputStream out = ImageIO.createImageOutputStream(output)) {
+			if (out == null) {
+				throw new IOException("Cannot write " + output);
+			}
+			ImageReader reader = openReader(in, input);
+			try {
+				// Forward-only lets the reader discard everything before the current page
+				reader.setInput(in, true, true);
+				writer.setOutput(out);
+				writer.prepareWriteSequence(null);
+				ImageWriteParam param = writeParam(writer);
+
+				while (true) {
+					MaskPipeline.checkInterrupted();
+					BufferedImage page;
+					try {
+						page = reader.read(pages);
+					} catch (IndexOutOfBoundsException endOfDocument) {
+						break;
+					}
+					MaskResult result = pipeline.process(tesseract, page);
+					writer.writeToSequence(new IIOImage(result.getImage(), null, null), param);
+					pages++;
+					if (result.isMasked()) {
+						masked++;
+					}
+				}
+				writer.endWriteSequence();
+			} finally {
+				reader.dispose();
+			}
+		} finally {
+			writer.dispose();
+		}
+		return new Summary(pages, masked);
+	}
+
+	private static ImageReader openReader(ImageInputStream in, File input) throws IOException {
+		if (in == null) {
+			throw new IOException("Cannot read " + input);
+		}
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+		if (!readers.hasNext()) {
+			throw new IOException("No ImageIO reader for " + input.getName()
+					+ (input.getName().toLowerCase(Locale.ROOT).endsWith(".pdf") ? " (add a PDF ImageIO plugin)" : ""));
+		}
+		return readers.next();
+	}
+
+	private static ImageWriter tiffWriter() throws IOException {
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("tiff");
+		while (writers.hasNext()) {
+			ImageWriter writer = writers.next();
+			if (writer.canWriteSequence()) {
+				return writer;
+			}
+			writer.dispose();
+		}
+		throw new IOException("No ImageIO writer for multi-page TIFF");
+	}
+
+	private static ImageWriteParam writeParam(ImageWriter writer) {
+		ImageWriteParam param = writer.getDefaultWriteParam();
+		if (param.canWriteCompressed()) {
+			for (String type : param.getCompressionTypes()) {
+				if ("LZW".equals(type)) {
+					param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+					param.setCompressionType(type);
+					break;
+				}
+			}
+		}
+		return param;
+	}
+
+	public static class Summary {
+		private final int pages;
+		private final int maskedPages;
+
+		Summary(int pages, int maskedPages) {
+			this.pages = pages;
+			this.maskedPages = maskedPages;
+		}
+
+		public int getPages() {
+			return pages;
+		}
+
+		public int getMaskedPages() {
+			return maskedPages;
+		}
+	}
+}
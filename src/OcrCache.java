@@ -0,0 +1,90 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of recognition results keyed by a SHA-256 hash of the image
+ * pixels, so an unchanged image is never sent through Tesseract twice. Hashing
+ * costs a pass over every pixel, so callers check {@link #isEnabled()} first.
+ */
+public class OcrCache {
+
+	private final Map<String, OcrResult> entries;
+	private final int capacity;
+
+	public OcrCache(final int capacity) {
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<String, OcrResult>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, OcrResult> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/** False for a zero-capacity cache, which can never hit. */
+	public boolean isEnabled() {
+		return capacity > 0;
+	}
+
+	public synchronized OcrResult get(String key) {
+		return entries.get(key);
+	}
+
+	public synchronized void put(String key, OcrResult result) {
+		entries.put(key, result);
+	}
+
+	public static String contentHash(BufferedImage image) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(12);
+		header.putInt(image.getWidth()).putInt(image.getHeight()).putInt(image.getType());
+		digest.update(header.array());
+
+		WritableRaster raster = image.getRaster();
+		DataBuffer buffer = raster.getDataBuffer();
+		if (raster.getParent() == null && buffer instanceof DataBufferByte) {
+			for (int bank = 0; bank < buffer.getNumBanks(); bank++) {
+				digest.update(((DataBufferByte) buffer).getData(bank));
+			}
+		} else if (raster.getParent() == null && buffer instanceof DataBufferInt) {
+			updateInts(digest, ((DataBufferInt) buffer).getData());
+		} else {
+			// Sub-images and exotic rasters share or pack their buffer; hash visible pixels only
+			int[] row = new int[image.getWidth()];
+			for (int y = 0; y < image.getHeight(); y++) {
+				image.getRGB(0, y, row.length, 1, row, 0, row.length);
+				updateInts(digest, row);
+			}
+		}
+
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b & 0xff));
+		}
+		return hex.toString();
+	}
+
+	private static void updateInts(MessageDigest digest, int[] data) {
+		ByteBuffer chunk = ByteBuffer.allocate(4096 * 4);
+		for (int offset = 0; offset < data.length; offset += 4096) {
+			int count = Math.min(4096, data.length - offset);
+			chunk.clear();
+			chunk.asIntBuffer().put(data, offset, count);
+			digest.update(chunk.array(), 0, count * 4);
+		}
+	}
+}
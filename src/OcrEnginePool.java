@@ -0,0 +1,91 @@
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import net.sourceforge.tess4j.ITesseract;
+
+/**
+ * Fixed-size pool of {@link TessEngine}s, each keeping its model loaded from its
+ * first call until {@link #shutdown()}. Engines are not thread-safe, so a caller
+ * borrows one for the duration of a document and hands it back afterwards;
+ * engines are created lazily up to the pool size. A semaphore with one permit
+ * per engine caps concurrent OCR, and {@link #tryBorrow()} lets front ends shed
+ * load instead of queuing.
+ */
+public class OcrEnginePool {
+
+	private final BlockingQueue<TessEngine> idle = new LinkedBlockingQueue<>();
+	private final Semaphore permits;
+	private final int size;
+	private final String datapath;
+	private final String language;
+	private volatile boolean shutdown;
+
+	public OcrEnginePool(int size) {
+		this(size, Bootstrap.tessdata(), Bootstrap.language());
+	}
+
+	public OcrEnginePool(int size, String datapath, String language) {
+		if (size < 1) {
+			throw new IllegalArgumentException("Pool size must be at least 1: " + size);
+		}
+		this.size = size;
+		this.permits = new Semaphore(size);
+		this.datapath = datapath;
+		this.language = language;
+	}
+
+	public ITesseract borrow() throws InterruptedException {
+		permits.acquire();
+		return take();
+	}
+
+	/** Returns an engine if one is free right now, otherwise {@code null}. */
+	public ITesseract tryBorrow() {
+		return permits.tryAcquire() ? take() : null;
+	}
+
+	public void release(ITesseract tesseract) {
+		if (tesseract != null) {
+			idle.offer((TessEngine) tesseract);
+			permits.release();
+			if (shutdown) {
+				closeIdle();
+			}
+		}
+	}
+
+	/**
+	 * Frees the native state of every idle engine; engines still borrowed are
+	 * freed when they come back.
+	 */
+	public void shutdown() {
+		shutdown = true;
+		closeIdle();
+	}
+
+	public int available() {
+		return permits.availablePermits();
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private ITesseract take() {
+		// Holding a permit guarantees that at most size engines ever exist
+		ITesseract tesseract = idle.poll();
+		return tesseract != null ? tesseract : newEngine();
+	}
+
+	private ITesseract newEngine() {
+		return new TessEngine(datapath, language);
+	}
+
+	private void closeIdle() {
+		TessEngine engine;
+		while ((engine = idle.poll()) != null) {
+			engine.close();
+		}
+	}
+}
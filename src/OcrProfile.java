@@ -0,0 +1,208 @@
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.sourceforge.tess4j.ITessAPI;
+import net.sourceforge.tess4j.ITesseract;
+
+/**
+ * One way of running Tesseract: engine settings plus what it is run on
+ * (candidate strips or the whole page, optionally upscaled or rotated).
+ * {@link MaskPipeline} walks a cascade of profiles, cheapest first, and stops
+ * at the first one whose text holds a valid number.
+ */
+public final class OcrProfile {
+
+	private static final String DIGITS = "0123456789";
+
+	/** Upscaling stops paying off, and gets expensive, beyond roughly this page width. */
+	private static final int MAX_UPSCALED_WIDTH = 4000;
+
+	/**
+	 * Template-matching digit reader on the strips; no Tesseract call at all. Not
+	 * in the default cascade: put it first with {@link #FAST_CASCADE}, or
+	 * {@code aadhaar.ocr.cascade=fast}, for cards printed in common fonts.
+	 */
+	public static final OcrProfile TEMPLATE_DIGITS = new OcrProfile("template_digits", true, true, 0, 0, DIGITS, 1, 0);
+
+	/** Digits only, one text line per strip, LSTM engine; run on {@link RoiDetector} strips. */
+	public static final OcrProfile DIGITS_LINE = new OcrProfile("digits_line", true,
+			ITessAPI.TessPageSegMode.PSM_SINGLE_LINE, ITessAPI.TessOcrEngineMode.OEM_LSTM_ONLY, DIGITS, 1, 0);
+
+	/** Default settings over the whole page; the behaviour before profiles existed. */
+	public static final OcrProfile FULL_PAGE = new OcrProfile("full_page", false, ITessAPI.TessPageSegMode.PSM_AUTO,
+			ITessAPI.TessOcrEngineMode.OEM_DEFAULT, "", 1, 0);
+
+	/** Whole page at twice the resolution, for small or low-DPI scans. */
+	public static final OcrProfile UPSCALED = new OcrProfile("upscaled", false, ITessAPI.TessPageSegMode.PSM_AUTO,
+			ITessAPI.TessOcrEngineMode.OEM_DEFAULT, "", 2, 0);
+
+	public static final OcrProfile ROTATED_90 = new OcrProfile("rotated_90", false, ITessAPI.TessPageSegMode.PSM_AUTO,
+			ITessAPI.TessOcrEngineMode.OEM_DEFAULT, "", 1, 1);
+
+	public static final OcrProfile ROTATED_180 = new OcrProfile("rotated_180", false,
+			ITessAPI.TessPageSegMode.PSM_AUTO, ITessAPI.TessOcrEngineMode.OEM_DEFAULT, "", 1, 2);
+
+	public static final OcrProfile ROTATED_270 = new OcrProfile("rotated_270", false,
+			ITessAPI.TessPageSegMode.PSM_AUTO, ITessAPI.TessOcrEngineMode.OEM_DEFAULT, "", 1, 3);
+
+	public static final List<OcrProfile> DEFAULT_CASCADE = Collections.unmodifiableList(
+			Arrays.asList(DIGITS_LINE, FULL_PAGE, UPSCALED, ROTATED_90, ROTATED_270, ROTATED_180));
+
+	/** {@link #DEFAULT_CASCADE} preceded by the template reader. */
+	public static final List<OcrProfile> FAST_CASCADE = Collections.unmodifiableList(
+			Arrays.asList(TEMPLATE_DIGITS, DIGITS_LINE, FULL_PAGE, UPSCALED, ROTATED_90, ROTATED_270, ROTATED_180));
+
+	/**
+	 * The cascade named by {@code aadhaar.ocr.cascade} / {@code AADHAAR_OCR_CASCADE}:
+	 * {@code fast} for {@link #FAST_CASCADE}, {@code default} or unset for
+	 * {@link #DEFAULT_CASCADE}.
+	 */
+	public static List<OcrProfile> configuredCascade() {
+		String name = Bootstrap.setting("aadhaar.ocr.cascade", "AADHAAR_OCR_CASCADE");
+		if (name == null || name.equalsIgnoreCase("default")) {
+			return DEFAULT_CASCADE;
+		}
+		if (name.equalsIgnoreCase("fast")) {
+			return FAST_CASCADE;
+		}
+		throw new IllegalArgumentException("Unknown OCR cascade: " + name);
+	}
+
+	private final String name;
+	private final boolean templates;
+	private final boolean strips;
+	private final int pageSegMode;
+	private final int engineMode;
+	private final String whitelist;
+	private final int scale;
+	private final int quarterTurns;
+
+	/**
+	 * @param strips       run on candidate strips instead of the whole page
+	 * @param whitelist    characters Tesseract may output; empty allows all
+	 * @param scale        integer upscale factor applied before recognition
+	 * @param quarterTurns clockwise quarter turns applied before recognition
+	 */
+	public OcrProfile(String name, boolean strips, int pageSegMode, int engineMode, String whitelist, int scale,
+			int quarterTurns) {
+		this(name, false, strips, pageSegMode, engineMode, whitelist, scale, quarterTurns);
+	}
+
+	private OcrProfile(String name, boolean templates, boolean strips, int pageSegMode, int engineMode,
+			String whitelist, int scale, int quarterTurns) {
+		this.name = name;
+		this.templates = templates;
+		this.strips = strips;
+		this.pageSegMode = pageSegMode;
+		this.engineMode = engineMode;
+		this.whitelist = whitelist;
+		this.scale = scale;
+		this.quarterTurns = quarterTurns & 3;
+	}
+
+	/**
+	 * Configures the engine for this profile. Every setting is written each time,
+	 * so an engine shared across profiles never keeps the previous one's options.
+	 */
+	public void apply(ITesseract tesseract) {
+		if (templates) {
+			return;
+		}
+		tesseract.setPageSegMode(pageSegMode);
+		tesseract.setOcrEngineMode(engineMode);
+		tesseract.setVariable("tessedit_char_whitelist", whitelist);
+	}
+
+	/** False for an upscaling profile on a page that is already large. */
+	public boolean appliesTo(BufferedImage image) {
+		return scale == 1 || image.getWidth() * scale <= MAX_UPSCALED_WIDTH;
+	}
+
+	/** The page as Tesseract should see it under this profile. */
+	public BufferedImage prepare(BufferedImage image) {
+		if (scale == 1 && quarterTurns == 0) {
+			return image;
+		}
+		int width = image.getWidth() * scale;
+		int height = image.getHeight() * scale;
+		boolean sideways = (quarterTurns & 1) == 1;
+		BufferedImage prepared = new BufferedImage(sideways ? height : width, sideways ? width : height,
+				BufferedImage.TYPE_INT_RGB);
+
+		AffineTransform transform = new AffineTransform();
+		if (quarterTurns == 1) {
+			transform.translate(height, 0);
+		} else if (quarterTurns == 2) {
+			transform.translate(width, height);
+		} else if (quarterTurns == 3) {
+			transform.translate(0, width);
+		}
+		transform.quadrantRotate(quarterTurns);
+		transform.scale(scale, scale);
+
+		Graphics2D g2d = prepared.createGraphics();
+		g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g2d.drawImage(image, transform, null);
+		g2d.dispose();
+		return prepared;
+	}
+
+	/**
+	 * Maps a box found on the {@link #prepare prepared} page back onto the
+	 * original page of the given size.
+	 */
+	public Rectangle toSource(Rectangle box, int sourceWidth, int sourceHeight) {
+		int width = sourceWidth * scale;
+		int height = sourceHeight * scale;
+		Rectangle unturned;
+		if (quarterTurns == 1) {
+			unturned = new Rectangle(box.y, height - box.x - box.width, box.height, box.width);
+		} else if (quarterTurns == 2) {
+			unturned = new Rectangle(width - box.x - box.width, height - box.y - box.height, box.width, box.height);
+		} else if (quarterTurns == 3) {
+			unturned = new Rectangle(width - box.y - box.height, box.x, box.height, box.width);
+		} else {
+			unturned = box;
+		}
+		if (scale == 1) {
+			return unturned;
+		}
+		int left = unturned.x / scale;
+		int top = unturned.y / scale;
+		int right = (unturned.x + unturned.width + scale - 1) / scale;
+		int bottom = (unturned.y + unturned.height + scale - 1) / scale;
+		return new Rectangle(left, top, right - left, bottom - top);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/** True when this profile is read by {@link DigitRecognizer} instead of Tesseract. */
+	public boolean isTemplates() {
+		return templates;
+	}
+
+	public boolean isStrips() {
+		return strips;
+	}
+
+	public int getScale() {
+		return scale;
+	}
+
+	public int getQuarterTurns() {
+		return quarterTurns;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
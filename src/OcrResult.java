@@ -0,0 +1,69 @@
+import java.awt.Rectangle;
+import java.util.Collections;
+import java.util.List;
+
+import net.sourceforge.tess4j.Word;
+
+/**
+ * Text and word boxes from a single recognition pass. The page text is rebuilt
+ * from the words themselves, so a character offset in {@link #getText()} can
+ * always be traced back to the word that produced it.
+ */
+public class OcrResult {
+
+	private final String text;
+	private final List<Word> words;
+	private final int[] wordOffsets;
+
+	public OcrResult(List<Word> words) {
+		this.words = Collections.unmodifiableList(words);
+		this.wordOffsets = new int[words.size()];
+
+		StringBuilder sb = new StringBuilder();
+		Rectangle previous = null;
+		for (int i = 0; i < words.size(); i++) {
+			Word word = words.get(i);
+			Rectangle box = word.getBoundingBox();
+			if (previous != null) {
+				// Tesseract returns words in reading order; a word that starts left of or
+				// below the previous one begins a new line
+				boolean newLine = box.x < previous.x || box.y >= previous.y + previous.height;
+				sb.append(newLine ? '\n' : ' ');
+			}
+			wordOffsets[i] = sb.length();
+			sb.append(word.getText().trim());
+			previous = box;
+		}
+		this.text = sb.toString();
+	}
+
+	private OcrResult(String text, List<Word> words, int[] wordOffsets) {
+		this.text = text;
+		this.words = Collections.unmodifiableList(words);
+		this.wordOffsets = wordOffsets;
+	}
+
+	/**
+	 * Same text and offsets with the word boxes replaced, e.g. mapped back from a
+	 * rotated page. The text keeps the reading order it was recognized in.
+	 */
+	public OcrResult withWords(List<Word> mapped) {
+		if (mapped.size() != words.size()) {
+			throw new IllegalArgumentException("Expected " + words.size() + " words, got " + mapped.size());
+		}
+		return new OcrResult(text, mapped, wordOffsets);
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public List<Word> getWords() {
+		return words;
+	}
+
+	/** Offset in {@link #getText()} at which the word with the given index starts. */
+	public int getWordOffset(int index) {
+		return wordOffsets[index];
+	}
+}
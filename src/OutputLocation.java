@@ -0,0 +1,87 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Where masked files are written. The directory comes from the
+ * {@code aadhaar.output.dir} system property, then the
+ * {@code AADHAAR_OUTPUT_DIR} environment variable, and defaults to
+ * {@code AadhaarMasked} in the user's home directory. File names are derived
+ * from the source and claimed atomically, so concurrent jobs never overwrite
+ * each other's output.
+ */
+public final class OutputLocation {
+
+	public static final String PROPERTY = "aadhaar.output.dir";
+	public static final String ENVIRONMENT = "AADHAAR_OUTPUT_DIR";
+
+	private OutputLocation() {
+	}
+
+	public static File directory() throws IOException {
+		String configured = System.getProperty(PROPERTY);
+		if (configured == null || configured.isEmpty()) {
+			configured = System.getenv(ENVIRONMENT);
+		}
+		File directory = configured == null || configured.isEmpty()
+				? new File(System.getProperty("user.home"), "AadhaarMasked")
+				: new File(configured);
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create output directory: " + directory);
+		}
+		return directory;
+	}
+
+	/** A new file for the masked version of {@code source} in the configured directory. */
+	public static File forSource(File source, String extension) throws IOException {
+		return unique(directory(), baseName(source) + "_masked", extension);
+	}
+
+	/**
+	 * Claims {@code name.extension}, or {@code name-1.extension}, {@code name-2...}
+	 * if taken. The file is created empty, so no other job can claim the same name.
+	 */
+	public static File unique(File directory, String name, String extension) throws IOException {
+		for (int i = 0;; i++) {
+			File candidate = new File(directory, name + (i == 0 ? "" : "-" + i) + "." + extension);
+			if (candidate.createNewFile()) {
+				return candidate;
+			}
+		}
+	}
+
+	/**
+	 * Gives a finished temporary file its final, unique name. The name is claimed
+	 * with a hard link, so a reader never sees a partly written or empty output;
+	 * on file systems without hard links the name is claimed first and the file
+	 * atomically moved over it.
+	 */
+	public static File publish(Path temp, File directory, String name, String extension) throws IOException {
+		try {
+			for (int i = 0;; i++) {
+				Path target = new File(directory, name + (i == 0 ? "" : "-" + i) + "." + extension).toPath();
+				try {
+					Files.createLink(target, temp);
+					Files.delete(temp);
+					return target.toFile();
+				} catch (FileAlreadyExistsException taken) {
+					// Try the next suffix
+				}
+			}
+		} catch (UnsupportedOperationException | FileSystemException noLinks) {
+			File target = unique(directory, name, extension);
+			Files.move(temp, target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			return target;
+		}
+	}
+
+	static String baseName(File file) {
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		return dot > 0 ? name.substring(0, dot) : name;
+	}
+}
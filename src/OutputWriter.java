@@ -0,0 +1,229 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Encodes and writes masked images on threads of its own, so the OCR workers
+ * move on to the next document while the previous one is compressed and
+ * written. At most {@code capacity} images wait for a writer; beyond that
+ * {@link #submit} blocks, which keeps a slow disk from filling the heap with
+ * decoded pages.
+ *
+ * Every file is written to a temporary name in the target directory and then
+ * published under a unique final name (see {@link OutputLocation#publish}), so
+ * concurrent jobs never overwrite each other and nothing reads half a file.
+ */
+public class OutputWriter {
+
+	private final ExecutorService writers;
+	private final Semaphore slots;
+	private final Format format;
+
+	/**
+	 * @param threads  encoder threads; one is usually enough next to a full OCR pool
+	 * @param capacity images that may wait for an encoder before {@link #submit} blocks
+	 */
+	public OutputWriter(int threads, int capacity, Format format) {
+		this.writers = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "output-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.slots = new Semaphore(threads + capacity);
+		this.format = format;
+		Metrics.gauge("output_queue_free_slots", slots::availablePermits);
+	}
+
+	public Format getFormat() {
+		return format;
+	}
+
+	/**
+	 * Queues the image for writing as {@code name.<extension>} (or
+	 * {@code name-1...}) in {@code directory}, waiting for a free slot if the
+	 * queue is full. The image must not be modified afterwards. The future
+	 * completes with the file written.
+	 */
+	public CompletableFuture<File> submit(BufferedImage image, File directory, String name)
+			throws InterruptedException {
+		slots.acquire();
+		try {
+			return CompletableFuture.supplyAsync(() -> {
+				try {
+					return write(image, directory, name);
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				} finally {
+					slots.release();
+				}
+			}, writers);
+		} catch (RuntimeException ex) {
+			slots.release();
+			throw ex;
+		}
+	}
+
+	/** Encodes and publishes the image on the calling thread. */
+	public File write(BufferedImage image, File directory, String name) throws IOException {
+		return format.write(image, directory, name);
+	}
+
+	/** Stops taking images and waits for every queued one to be written. */
+	public void awaitCompletion() throws InterruptedException {
+		writers.shutdown();
+		writers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * ImageIO format name plus optional compression settings. A compression type
+	 * or quality the codec does not support is ignored, keeping its default.
+	 */
+	public static final class Format {
+		public static final Format PNG = new Format("png", null, -1);
+
+		private final String name;
+		private final String compressionType;
+		private final float quality;
+
+		/**
+		 * @param compressionType codec-specific, e.g. {@code Deflate} or {@code LZW} for TIFF; null for the default
+		 * @param quality         0 to 1, or negative for the codec default. For JPEG this is image quality;
+		 *                        for PNG (Java 9+) higher values mean faster, lighter deflate
+		 */
+		public Format(String name, String compressionType, float quality) {
+			this.name = name.toLowerCase(Locale.ROOT);
+			this.compressionType = compressionType;
+			this.quality = quality;
+		}
+
+		/**
+		 * Read from {@code aadhaar.output.format}, {@code aadhaar.output.compression}
+		 * and {@code aadhaar.output.quality} (or {@code AADHAAR_OUTPUT_FORMAT} and so
+		 * on), defaulting to PNG.
+		 */
+		public static Format configured() {
+			String name = Bootstrap.setting("aadhaar.output.format", "AADHAAR_OUTPUT_FORMAT");
+			String compression = Bootstrap.setting("aadhaar.output.compression", "AADHAAR_OUTPUT_COMPRESSION");
+			String quality = Bootstrap.setting("aadhaar.output.quality", "AADHAAR_OUTPUT_QUALITY");
+			Format format = new Format(name != null ? name : "png", compression,
+					quality != null ? Float.parseFloat(quality) : -1);
+			format.newWriter().dispose();
+			return format;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getExtension() {
+			return name.equals("jpeg") ? "jpg" : name.equals("tiff") ? "tif" : name;
+		}
+
+		/**
+		 * Encodes the image to a temporary file and publishes it as
+		 * {@code name.<extension>} (or {@code name-1...}) in {@code directory}, on
+		 * the calling thread.
+		 */
+		public File write(BufferedImage image, File directory, String name) throws IOException {
+			Metrics.Stopwatch watch = Metrics.stopwatch();
+			Path temp = Files.createTempFile(directory.toPath(), ".masking-", ".part");
+			try {
+				try (ImageOutputStream out = ImageIO.createImageOutputStream(temp.toFile())) {
+					if (out == null) {
+						throw new IOException("Cannot write " + temp);
+					}
+					encode(image, out);
+				}
+				File output = OutputLocation.publish(temp, directory, name, getExtension());
+				watch.lap("encode");
+				Metrics.increment("output_files_total", 1);
+				Metrics.increment("output_bytes_total", output.length());
+				return output;
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		}
+
+		/** Encodes the image onto the stream, dropping the alpha channel if the codec cannot take it. */
+		public void encode(BufferedImage image, OutputStream stream) throws IOException {
+			try (ImageOutputStream out = ImageIO.createImageOutputStream(stream)) {
+				encode(image, out);
+			}
+		}
+
+		void encode(BufferedImage image, ImageOutputStream out) throws IOException {
+			ImageWriter writer = newWriter();
+			try {
+				if (!writer.getOriginatingProvider().canEncodeImage(image)) {
+					// JPEG and some TIFF codecs take no alpha channel
+					image = withoutAlpha(image);
+				}
+				writer.setOutput(out);
+				writer.write(null, new IIOImage(image, null, null), writeParam(writer));
+			} finally {
+				writer.dispose();
+			}
+		}
+
+		private static BufferedImage withoutAlpha(BufferedImage image) {
+			BufferedImage opaque = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+			Graphics2D g2d = opaque.createGraphics();
+			g2d.drawImage(image, 0, 0, null);
+			g2d.dispose();
+			return opaque;
+		}
+
+		ImageWriter newWriter() {
+			Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(name);
+			if (!writers.hasNext()) {
+				throw new IllegalArgumentException("No ImageIO writer for format " + name);
+			}
+			return writers.next();
+		}
+
+		ImageWriteParam writeParam(ImageWriter writer) {
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			if (!param.canWriteCompressed() || (compressionType == null && quality < 0)) {
+				return param;
+			}
+			param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			String[] types = param.getCompressionTypes();
+			if (types != null && types.length > 0) {
+				String type = types[0];
+				for (String candidate : types) {
+					if (candidate.equalsIgnoreCase(compressionType)) {
+						type = candidate;
+					}
+				}
+				param.setCompressionType(type);
+			}
+			if (quality >= 0) {
+				param.setCompressionQuality(Math.min(1f, quality));
+			}
+			return param;
+		}
+
+		@Override
+		public String toString() {
+			return name + (compressionType != null ? "/" + compressionType : "") + (quality >= 0 ? " q=" + quality : "");
+		}
+	}
+}
@@ -0,0 +1,53 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.objdetect.CascadeClassifier;
+
+/**
+ * Optional detector for the holder's photograph, using an OpenCV face cascade
+ * (such as {@code haarcascade_frontalface_default.xml}) and widening each face
+ * to the printed photo around it.
+ */
+public class PhotoRegionDetector implements RegionDetector {
+
+	private final String cascadePath;
+	// CascadeClassifier is not safe for concurrent use
+	private final ThreadLocal<CascadeClassifier> classifiers;
+
+	public PhotoRegionDetector(String cascadePath) {
+		if (!new File(cascadePath).isFile()) {
+			throw new IllegalArgumentException("Face cascade not found: " + cascadePath);
+		}
+		this.cascadePath = cascadePath;
+		this.classifiers = ThreadLocal.withInitial(() -> new CascadeClassifier(this.cascadePath));
+	}
+
+	@Override
+	public String getName() {
+		return "photo";
+	}
+
+	@Override
+	public List<Rect> detect(Frame frame) {
+		Mat gray = frame.getGray();
+		int minFace = Math.max(24, gray.cols() / 25);
+		try (MatScope scope = new MatScope()) {
+			MatOfRect faces = scope.track(new MatOfRect());
+			classifiers.get().detectMultiScale(gray, faces, 1.1, 4, 0, new Size(minFace, minFace), new Size());
+			List<Rect> regions = new ArrayList<>();
+			for (Rect face : faces.toArray()) {
+				// The printed photo shows hair, ears and shoulders around the detected face
+				int padX = face.width * 3 / 10;
+				int top = face.y - face.height / 2;
+				int bottom = face.y + face.height + face.height * 7 / 10;
+				regions.add(new Rect(face.x - padX, top, face.width + 2 * padX, bottom - top));
+			}
+			return regions;
+		}
+	}
+}
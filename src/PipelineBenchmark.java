@@ -0,0 +1,189 @@
+import java.awt.image.BufferedImage;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import net.sourceforge.tess4j.ITesseract;
+
+/**
+ * Self-contained micro-benchmark for every stage of the masking pipeline, run
+ * on synthetic cards at several resolutions. Each stage is warmed up and then
+ * measured for a fixed wall time; the report gives throughput, mean latency
+ * and bytes allocated per operation (the equivalent of JMH's gc.alloc.rate.norm).
+ * Stages whose native libraries are missing are reported as skipped.
+ *
+ * Usage: PipelineBenchmark [resultsFile] [warmupMillis] [measureMillis]
+ */
+public class PipelineBenchmark {
+
+	private static final int[][] RESOLUTIONS = { { 640, 400 }, { 1280, 800 }, { 2480, 3508 } };
+
+	private static volatile int sink;
+
+	private interface Stage {
+		Object run() throws Exception;
+	}
+
+	private final long warmupNanos;
+	private final long measureNanos;
+	private final List<String> report = new ArrayList<>();
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	public PipelineBenchmark(long warmupMillis, long measureMillis) {
+		this.warmupNanos = warmupMillis * 1000000L;
+		this.measureNanos = measureMillis * 1000000L;
+	}
+
+	public List<String> run() {
+		report.add(String.format(Locale.ROOT, "# java %s, %s %s, %d cpus", System.getProperty("java.version"),
+				System.getProperty("os.name"), System.getProperty("os.arch"),
+				Runtime.getRuntime().availableProcessors()));
+		report.add(String.format(Locale.ROOT, "%-22s %-10s %12s %12s %14s", "stage", "size", "ops/s", "us/op", "B/op"));
+
+		boolean opencv = loadOpenCv();
+		ITesseract tesseract = opencv ? openTesseract() : null;
+		final MaskPipeline pipeline = new MaskPipeline(0, MaskPolicy.FIRST_EIGHT_DIGITS, OcrProfile.DEFAULT_CASCADE);
+		final MaskPipeline fastPipeline = new MaskPipeline(0, MaskPolicy.FIRST_EIGHT_DIGITS, OcrProfile.FAST_CASCADE);
+		final String ocrText = "Government of India\nName: Test Person\n" + SyntheticCard.SAMPLE_NUMBER + "\n";
+
+		bench("extractAadhaarNumber", "-", () -> pipeline.extractAadhaarNumber(ocrText));
+
+		for (int[] resolution : RESOLUTIONS) {
+			String size = resolution[0] + "x" + resolution[1];
+			final BufferedImage card = SyntheticCard.render(resolution[0], resolution[1]);
+			final Rect band = new Rect(resolution[0] / 4, resolution[1] * 6 / 10, resolution[0] / 2, resolution[1] / 10);
+
+			// Masking paints in place, so it gets a card of its own; the others must still see the number
+			final BufferedImage maskTarget = SyntheticCard.render(resolution[0], resolution[1]);
+			bench("maskAadhaarNumber", size, () -> pipeline.maskAadhaarNumber(maskTarget, band));
+			bench("deskew.rotate", size, () -> Deskew.rotate(card, 3.0).getImage());
+
+			if (!opencv) {
+				skip("bufferedImageToMat", size, "OpenCV natives not available");
+				skip("matToBufferedImage", size, "OpenCV natives not available");
+				skip("deskew.estimateAngle", size, "OpenCV natives not available");
+				skip("roiDetector.detect", size, "OpenCV natives not available");
+				skip("preprocess", size, "OpenCV natives not available");
+				skip("digitRecognizer", size, "OpenCV natives not available");
+			} else {
+				final Mat reused = new Mat();
+				final Mat frame = MatBridge.toMat(card);
+				final Deskew deskew = new Deskew();
+				final RoiDetector roiDetector = new RoiDetector();
+				bench("bufferedImageToMat", size, () -> MatBridge.toMat(card, reused));
+				bench("matToBufferedImage", size, () -> MatBridge.toBufferedImage(frame));
+				bench("deskew.estimateAngle", size, () -> deskew.estimateAngle(frame));
+				bench("roiDetector.detect", size, () -> roiDetector.detect(frame));
+				final double scale = Preprocessor.ALL.scaleFor(card.getWidth());
+				bench("preprocess", size, () -> Preprocessor.ALL.apply(card, scale).getImage());
+				final DigitRecognizer digits = new DigitRecognizer();
+				final List<Rect> bands = Collections.singletonList(band);
+				bench("digitRecognizer", size, () -> digits.recognize(frame, bands));
+				reused.release();
+				frame.release();
+			}
+
+			if (tesseract == null) {
+				skip("performOCR", size, "Tesseract not available");
+				skip("endToEnd", size, "Tesseract not available");
+				skip("endToEnd.fast", size, "Tesseract not available");
+			} else {
+				final ITesseract engine = tesseract;
+				bench("performOCR", size, () -> pipeline.performOCR(engine, card));
+				// process masks in place; every iteration gets an unmasked copy, and the copy is part of the time
+				bench("endToEnd", size, () -> pipeline.process(engine, copyOf(card)).getImage());
+				bench("endToEnd.fast", size, () -> fastPipeline.process(engine, copyOf(card)).getImage());
+			}
+		}
+		return report;
+	}
+
+	private void bench(String name, String size, Stage stage) {
+		try {
+			long deadline = System.nanoTime() + warmupNanos;
+			while (System.nanoTime() < deadline) {
+				consume(stage.run());
+			}
+
+			long allocatedBefore = allocatedBytes();
+			long start = System.nanoTime();
+			deadline = start + measureNanos;
+			long ops = 0;
+			long now;
+			do {
+				consume(stage.run());
+				ops++;
+				now = System.nanoTime();
+			} while (now < deadline);
+			long allocated = allocatedBytes() - allocatedBefore;
+
+			double seconds = (now - start) / 1e9;
+			report.add(String.format(Locale.ROOT, "%-22s %-10s %12.1f %12.1f %14s", name, size, ops / seconds,
+					seconds * 1e6 / ops, allocatedBefore < 0 ? "n/a" : Long.toString(allocated / ops)));
+		} catch (Exception | LinkageError ex) {
+			skip(name, size, ex.toString());
+		}
+	}
+
+	private void skip(String name, String size, String reason) {
+		report.add(String.format(Locale.ROOT, "%-22s %-10s SKIPPED (%s)", name, size, reason));
+	}
+
+	private long allocatedBytes() {
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	private static void consume(Object result) {
+		sink += result == null ? 0 : System.identityHashCode(result);
+	}
+
+	private static BufferedImage copyOf(BufferedImage image) {
+		return new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
+	}
+
+	private static boolean loadOpenCv() {
+		return Bootstrap.tryLoadNatives();
+	}
+
+	private static ITesseract openTesseract() {
+		try {
+			ITesseract tesseract = new OcrEnginePool(1).borrow();
+			tesseract.doOCR(SyntheticCard.render(320, 200));
+			return tesseract;
+		} catch (Exception | LinkageError ex) {
+			return null;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		long warmupMillis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+		long measureMillis = args.length > 2 ? Long.parseLong(args[2]) : 3000;
+
+		List<String> report = new PipelineBenchmark(warmupMillis, measureMillis).run();
+		for (String line : report) {
+			System.out.println(line);
+		}
+		if (args.length > 0) {
+			try (PrintWriter out = new PrintWriter(
+					new OutputStreamWriter(new FileOutputStream(args[0]), StandardCharsets.UTF_8))) {
+				for (String line : report) {
+					out.println(line);
+				}
+			}
+		}
+	}
+}
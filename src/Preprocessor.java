@@ -0,0 +1,225 @@
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Cleans a page up for Tesseract in native memory: grayscale, resolution
+ * normalization, glare and uneven-light removal, denoising and adaptive
+ * binarization. Tesseract then gets an 8-bit image it does not need to
+ * binarize again, at a resolution that is not larger than it needs to be.
+ *
+ * The stages always run in the order of {@link Stage}. None runs unless it is
+ * switched on, see {@link #configured()}, so by default Tesseract reads the
+ * image as it always has. Each stage is timed as
+ * {@code preprocess.<stage>}, so a stage that costs more than it saves shows up
+ * in the metrics and can be switched off.
+ */
+public final class Preprocessor {
+
+	public enum Stage {
+		GRAY("gray"), NORMALIZE_DPI("dpi"), GLARE("glare"), DENOISE("denoise"), THRESHOLD("threshold");
+
+		private final String key;
+
+		Stage(String key) {
+			this.key = key;
+		}
+
+		public String getKey() {
+			return key;
+		}
+	}
+
+	/** Pages are scaled into this width range; the OCR profiles upscale further if needed. */
+	public static final int MIN_WIDTH = 1000;
+	public static final int MAX_WIDTH = 2500;
+
+	public static final Preprocessor NONE = new Preprocessor(EnumSet.noneOf(Stage.class));
+	public static final Preprocessor ALL = new Preprocessor(EnumSet.allOf(Stage.class));
+
+	private static final int ADAPTIVE_OFFSET = 10;
+
+	// The result stays valid until the same thread preprocesses its next image
+	private static final ThreadLocal<BufferedImage> OUTPUT = new ThreadLocal<>();
+
+	private final EnumSet<Stage> stages;
+
+	public Preprocessor(EnumSet<Stage> stages) {
+		this.stages = EnumSet.copyOf(stages);
+	}
+
+	/**
+	 * Parses a comma-separated list of stage keys, such as
+	 * {@code gray,dpi,threshold}. {@code all} turns every stage on; {@code none}
+	 * or an empty list disables preprocessing.
+	 */
+	public static Preprocessor parse(String spec) {
+		EnumSet<Stage> stages = EnumSet.noneOf(Stage.class);
+		for (String key : spec.split(",")) {
+			key = key.trim().toLowerCase(Locale.ROOT);
+			if (key.isEmpty() || key.equals("none")) {
+				continue;
+			}
+			if (key.equals("all")) {
+				stages.addAll(EnumSet.allOf(Stage.class));
+				continue;
+			}
+			Stage stage = null;
+			for (Stage candidate : Stage.values()) {
+				if (candidate.key.equals(key)) {
+					stage = candidate;
+				}
+			}
+			if (stage == null) {
+				throw new IllegalArgumentException("Unknown preprocessing stage: " + key);
+			}
+			stages.add(stage);
+		}
+		return new Preprocessor(stages);
+	}
+
+	/**
+	 * The stages named by {@code aadhaar.preprocess} / {@code AADHAAR_PREPROCESS},
+	 * or none.
+	 */
+	public static Preprocessor configured() {
+		String spec = Bootstrap.setting("aadhaar.preprocess", "AADHAAR_PREPROCESS");
+		return spec == null ? NONE : parse(spec);
+	}
+
+	public List<Stage> getStages() {
+		return Collections.unmodifiableList(new ArrayList<>(stages));
+	}
+
+	/** Resolution factor for a page of the given width; 1 unless DPI normalization is on. */
+	public double scaleFor(int pageWidth) {
+		if (!stages.contains(Stage.NORMALIZE_DPI)) {
+			return 1;
+		}
+		if (pageWidth > MAX_WIDTH) {
+			return (double) MAX_WIDTH / pageWidth;
+		}
+		if (pageWidth < MIN_WIDTH) {
+			return (double) MIN_WIDTH / pageWidth;
+		}
+		return 1;
+	}
+
+	/**
+	 * Runs the enabled stages over the image, resized by {@code scale} (see
+	 * {@link #scaleFor}). Without any stage the image is returned as it is.
+	 */
+	public Result apply(BufferedImage image, double scale) {
+		if (stages.isEmpty()) {
+			return new Result(image, 1);
+		}
+		if (!stages.contains(Stage.NORMALIZE_DPI)) {
+			scale = 1;
+		}
+		try (MatScope scope = new MatScope()) {
+			Mat current = MatBridge.toMat(image, scope.mat());
+			Metrics.Stopwatch watch = Metrics.stopwatch();
+			for (Stage stage : stages) {
+				current = run(stage, current, scale, scope);
+				watch.lap("preprocess." + stage.key);
+			}
+			BufferedImage output = MatBridge.toBufferedImage(current, OUTPUT.get());
+			OUTPUT.set(output);
+			return new Result(output, (double) current.cols() / image.getWidth());
+		}
+	}
+
+	private static Mat run(Stage stage, Mat image, double scale, MatScope scope) {
+		Mat gray = toGray(image, scope);
+		switch (stage) {
+		case GRAY:
+			return gray;
+		case NORMALIZE_DPI: {
+			if (scale == 1) {
+				return gray;
+			}
+			Size size = new Size(Math.max(1, Math.round(gray.cols() * scale)),
+					Math.max(1, Math.round(gray.rows() * scale)));
+			Mat resized = scope.acquire((int) size.height, (int) size.width, CvType.CV_8UC1);
+			Imgproc.resize(gray, resized, size, 0, 0, scale < 1 ? Imgproc.INTER_AREA : Imgproc.INTER_CUBIC);
+			return resized;
+		}
+		case GLARE: {
+			// Closing with a kernel wider than any stroke leaves only the paper, lit as it was
+			// photographed; dividing by it flattens glare, shadows and tinted backgrounds
+			int kernel = Math.max(15, gray.cols() / 40) | 1;
+			Mat background = scope.acquire(gray.rows(), gray.cols(), CvType.CV_8UC1);
+			Imgproc.morphologyEx(gray, background, Imgproc.MORPH_CLOSE,
+					scope.track(Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(kernel, kernel))));
+			Mat flattened = scope.acquire(gray.rows(), gray.cols(), CvType.CV_8UC1);
+			Core.divide(gray, background, flattened, 255);
+			return flattened;
+		}
+		case DENOISE: {
+			Mat denoised = scope.acquire(gray.rows(), gray.cols(), CvType.CV_8UC1);
+			Imgproc.medianBlur(gray, denoised, 3);
+			return denoised;
+		}
+		case THRESHOLD: {
+			// A block of a few stroke heights adapts to local contrast without splitting glyphs
+			int block = Math.max(15, gray.cols() / 60) | 1;
+			Mat binary = scope.acquire(gray.rows(), gray.cols(), CvType.CV_8UC1);
+			Imgproc.adaptiveThreshold(gray, binary, 255, Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C, Imgproc.THRESH_BINARY,
+					block, ADAPTIVE_OFFSET);
+			return binary;
+		}
+		default:
+			throw new IllegalStateException("Unhandled stage " + stage);
+		}
+	}
+
+	private static Mat toGray(Mat image, MatScope scope) {
+		if (image.channels() == 1) {
+			return image;
+		}
+		Mat gray = scope.acquire(image.rows(), image.cols(), CvType.CV_8UC1);
+		Imgproc.cvtColor(image, gray, image.channels() == 4 ? Imgproc.COLOR_BGRA2GRAY : Imgproc.COLOR_BGR2GRAY);
+		return gray;
+	}
+
+	/** The preprocessed image and how it maps back onto the input. */
+	public static final class Result {
+		private final BufferedImage image;
+		private final double scale;
+
+		Result(BufferedImage image, double scale) {
+			this.image = image;
+			this.scale = scale;
+		}
+
+		public BufferedImage getImage() {
+			return image;
+		}
+
+		public double getScale() {
+			return scale;
+		}
+
+		/** Maps a box found on the preprocessed image onto the input image. */
+		public Rectangle toSource(Rectangle box) {
+			if (scale == 1) {
+				return box;
+			}
+			int left = (int) Math.floor(box.x / scale);
+			int top = (int) Math.floor(box.y / scale);
+			int right = (int) Math.ceil((box.x + box.width) / scale);
+			int bottom = (int) Math.ceil((box.y + box.height) / scale);
+			return new Rectangle(left, top, right - left, bottom - top);
+		}
+	}
+}
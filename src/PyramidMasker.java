@@ -0,0 +1,159 @@
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.opencv.core.Rect;
+
+import net.sourceforge.tess4j.ITesseract;
+import net.sourceforge.tess4j.TesseractException;
+
+/**
+ * Detects on a cheaply decoded, subsampled proxy of a large image and masks at
+ * full resolution.
+ *
+ * The proxy is decoded with {@link ImageReadParam#setSourceSubsampling}, so the
+ * full raster is never needed for detection. When the proxy finds the number
+ * but the match is weak, only the padded region around it is re-read at full
+ * resolution with {@link ImageReadParam#setSourceRegion} and OCR'd again.
+ * Images that are already small go straight through the pipeline.
+ */
+public class PyramidMasker {
+
+	public static final int DEFAULT_PROXY_WIDTH = 1200;
+	public static final float DEFAULT_MIN_CONFIDENCE = 80f;
+
+	private final MaskPipeline pipeline;
+	private final int proxyWidth;
+	private final float minConfidence;
+
+	public PyramidMasker(MaskPipeline pipeline) {
+		this(pipeline, DEFAULT_PROXY_WIDTH, DEFAULT_MIN_CONFIDENCE);
+	}
+
+	public PyramidMasker(MaskPipeline pipeline, int proxyWidth, float minConfidence) {
+		this.pipeline = pipeline;
+		this.proxyWidth = proxyWidth;
+		this.minConfidence = minConfidence;
+	}
+
+	public MaskResult mask(File input, ITesseract tesseract) throws IOException, TesseractException {
+		Map<String, Long> stageNanos = new LinkedHashMap<>();
+		try (ImageInputStream in = ImageIO.createImageInputStream(input)) {
+			if (in == null) {
+				throw new IOException("Cannot read " + input);
+			}
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+			if (!readers.hasNext()) {
+				throw new IOException("Unsupported image format");
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(in, false, true);
+				return mask(reader, tesseract, stageNanos);
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	private MaskResult mask(ImageReader reader, ITesseract tesseract, Map<String, Long> stageNanos)
+			throws IOException, TesseractException {
+		int width = reader.getWidth(0);
+		int height = reader.getHeight(0);
+		int subsampling = width / proxyWidth;
+		Metrics.Stopwatch watch = Metrics.stopwatch();
+
+		if (subsampling < 2) {
+			BufferedImage image = reader.read(0);
+			stageNanos.put("decode", watch.lap("decode"));
+			return pipeline.mask(image, pipeline.detect(tesseract, image, stageNanos), stageNanos);
+		}
+
+		ImageReadParam proxyParam = reader.getDefaultReadParam();
+		proxyParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+		BufferedImage proxy = reader.read(0, proxyParam);
+		stageNanos.put("decode", watch.lap("decode"));
+		Detection detection = pipeline.detect(tesseract, proxy, stageNanos).transformed(subsampling, 0, 0);
+		proxy = null;
+		Metrics.increment("pyramid_proxy_detections_total", 1);
+
+		if (!detection.isLocated()) {
+			// Nothing legible on the proxy, or a number read but not placed: fall back to a full-resolution pass
+			Metrics.increment("pyramid_full_fallbacks_total", 1);
+			watch.restart();
+			BufferedImage image = reader.read(0);
+			stageNanos.put("decode", stageNanos.get("decode") + watch.lap("decode"));
+			return pipeline.mask(image, pipeline.detect(tesseract, image, stageNanos), stageNanos);
+		}
+
+		if (detection.getConfidence() < minConfidence) {
+			detection = refine(reader, tesseract, detection, width, height);
+		}
+
+		watch.restart();
+		BufferedImage image = reader.read(0);
+		stageNanos.put("decode", stageNanos.get("decode") + watch.lap("decode"));
+		return pipeline.mask(image, clip(detection, width, height), stageNanos);
+	}
+
+	/** Scaling up from the proxy can push a box past the page edge by a pixel or two. */
+	private static Detection clip(Detection detection, int width, int height) {
+		List<Rect> clipped = MaskEngine.merge(detection.getRegions(), width, height);
+		List<Rect> others = MaskEngine.merge(detection.getOtherRegions(), width, height);
+		return new Detection(detection.getAadhaarNumber(), clipped, clipped.isEmpty() ? 0 : detection.getConfidence(),
+				others);
+	}
+
+	/**
+	 * Re-reads the padded neighbourhood of each proxy region at full resolution.
+	 * A region keeps its proxy box when the re-read finds nothing better.
+	 */
+	private Detection refine(ImageReader reader, ITesseract tesseract, Detection proxy, int width, int height)
+			throws IOException, TesseractException {
+		List<Rect> regions = new ArrayList<>();
+		float confidence = 100;
+		for (Rect rect : proxy.getRegions()) {
+			Detection refined = refine(reader, tesseract, rect, width, height);
+			if (refined != null && refined.isLocated()) {
+				regions.addAll(refined.getRegions());
+				confidence = Math.min(confidence, refined.getConfidence());
+			} else {
+				regions.add(rect);
+				confidence = Math.min(confidence, proxy.getConfidence());
+			}
+		}
+		return new Detection(proxy.getAadhaarNumber(), regions, confidence, proxy.getOtherRegions());
+	}
+
+	/** Re-reads only the padded region around a weak match at full resolution. */
+	private Detection refine(ImageReader reader, ITesseract tesseract, Rect rect, int width, int height)
+			throws IOException, TesseractException {
+		Metrics.increment("pyramid_region_refinements_total", 1);
+		// Widen generously: the proxy box may cover just one digit group of the line
+		int padX = rect.width;
+		int padY = rect.height;
+		Rectangle region = new Rectangle(rect.x - padX, rect.y - padY, rect.width + 2 * padX, rect.height + 2 * padY)
+				.intersection(new Rectangle(0, 0, width, height));
+		if (region.isEmpty()) {
+			return null;
+		}
+
+		ImageReadParam regionParam = reader.getDefaultReadParam();
+		regionParam.setSourceRegion(region);
+		BufferedImage crop = reader.read(0, regionParam);
+		// The other detectors already ran on the proxy
+		Detection detection = pipeline.detectNumber(tesseract, crop, new LinkedHashMap<String, Long>());
+		return detection.transformed(1.0, region.x, region.y);
+	}
+}
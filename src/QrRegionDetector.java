@@ -0,0 +1,64 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.objdetect.QRCodeDetector;
+
+/**
+ * Locates the secure QR code printed on Aadhaar cards and letters. The code
+ * holds the holder's details, the number included, so it is masked whole.
+ * Only the finder patterns are located; nothing is decoded.
+ */
+public class QrRegionDetector implements RegionDetector {
+
+	/** Padding around the code, as a fraction of its size; covers the quiet zone. */
+	private static final double MARGIN = 0.08;
+
+	// The native detector keeps state between calls, so each thread gets its own
+	private final ThreadLocal<QRCodeDetector> detectors = ThreadLocal.withInitial(QRCodeDetector::new);
+
+	@Override
+	public String getName() {
+		return "qr";
+	}
+
+	@Override
+	public List<Rect> detect(Frame frame) {
+		QRCodeDetector detector = detectors.get();
+		try (MatScope scope = new MatScope()) {
+			Mat points = scope.mat();
+			Mat gray = frame.getGray();
+			if (!detector.detectMulti(gray, points) && !detector.detect(gray, points)) {
+				return Collections.emptyList();
+			}
+			Mat corners = points;
+			if (points.depth() != CvType.CV_32F) {
+				corners = scope.mat();
+				points.convertTo(corners, CvType.CV_32F);
+			}
+			float[] xy = new float[(int) (corners.total() * corners.channels())];
+			corners.get(0, 0, xy);
+
+			// Four corners per code, as x,y pairs
+			List<Rect> regions = new ArrayList<>(xy.length / 8);
+			for (int offset = 0; offset + 8 <= xy.length; offset += 8) {
+				float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+				for (int i = offset; i < offset + 8; i += 2) {
+					minX = Math.min(minX, xy[i]);
+					maxX = Math.max(maxX, xy[i]);
+					minY = Math.min(minY, xy[i + 1]);
+					maxY = Math.max(maxY, xy[i + 1]);
+				}
+				int padX = (int) Math.ceil((maxX - minX) * MARGIN);
+				int padY = (int) Math.ceil((maxY - minY) * MARGIN);
+				int left = (int) Math.floor(minX) - padX;
+				int top = (int) Math.floor(minY) - padY;
+				regions.add(new Rect(left, top, (int) Math.ceil(maxX) + padX - left, (int) Math.ceil(maxY) + padY - top));
+			}
+			return regions;
+		}
+	}
+}
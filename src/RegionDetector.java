@@ -0,0 +1,18 @@
+import java.util.List;
+
+import org.opencv.core.Rect;
+
+/**
+ * Finds something on a page that has to be masked besides the printed number,
+ * such as the secure QR code. Detectors run concurrently on a shared
+ * {@link Frame}, so an implementation must only read from it and must be safe
+ * to call from several threads at once.
+ */
+public interface RegionDetector {
+
+	/** Short name used in metrics and configuration, e.g. {@code qr}. */
+	String getName();
+
+	/** Regions to mask, in frame coordinates; empty when there is nothing to hide. */
+	List<Rect> detect(Frame frame);
+}
@@ -0,0 +1,122 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Finds horizontal text strips whose geometry matches a printed 12-digit number
+ * ("1234 5678 9012"), so Tesseract can read a few narrow bands instead of the
+ * whole card or page.
+ */
+public class RoiDetector {
+
+	// Detection runs on a downscaled copy; line geometry survives the resize
+	private static final int WORK_WIDTH = 1000;
+	private static final int MAX_CANDIDATES = 12;
+	private static final double MIN_ASPECT = 4.0;
+	private static final double MAX_ASPECT = 40.0;
+	private static final double MIN_FILL = 0.35;
+
+	public List<Rect> detect(Mat image) {
+		int count;
+		int columns;
+		int[] values;
+		double scale = Math.min(1.0, (double) WORK_WIDTH / image.cols());
+		int workRows;
+		try (MatScope scope = new MatScope()) {
+			Mat gray = image;
+			if (image.channels() == 3) {
+				gray = scope.acquire(image.rows(), image.cols(), CvType.CV_8UC1);
+				Imgproc.cvtColor(image, gray, Imgproc.COLOR_BGR2GRAY);
+			} else if (image.channels() == 4) {
+				gray = scope.acquire(image.rows(), image.cols(), CvType.CV_8UC1);
+				Imgproc.cvtColor(image, gray, Imgproc.COLOR_BGRA2GRAY);
+			}
+
+			Mat work = gray;
+			if (scale < 1.0) {
+				Size size = new Size(Math.round(gray.cols() * scale), Math.round(gray.rows() * scale));
+				work = scope.acquire((int) size.height, (int) size.width, CvType.CV_8UC1);
+				Imgproc.resize(gray, work, size, 0, 0, Imgproc.INTER_AREA);
+			}
+			workRows = work.rows();
+
+			// Strokes light up in the morphological gradient regardless of ink or paper colour
+			Mat gradient = scope.acquire(work.rows(), work.cols(), CvType.CV_8UC1);
+			Imgproc.morphologyEx(work, gradient, Imgproc.MORPH_GRADIENT,
+					scope.track(Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(3, 3))));
+
+			Mat binary = scope.acquire(work.rows(), work.cols(), CvType.CV_8UC1);
+			Imgproc.threshold(gradient, binary, 0, 255, Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
+
+			// Join the glyphs of a line (and the gaps between digit groups) into one blob
+			Mat closed = scope.acquire(work.rows(), work.cols(), CvType.CV_8UC1);
+			int joinWidth = Math.max(9, work.cols() / 50);
+			Imgproc.morphologyEx(binary, closed, Imgproc.MORPH_CLOSE,
+					scope.track(Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(joinWidth, 1))));
+
+			Mat labels = scope.acquire(work.rows(), work.cols(), CvType.CV_32S);
+			Mat stats = scope.mat();
+			Mat centroids = scope.mat();
+			count = Imgproc.connectedComponentsWithStats(closed, labels, stats, centroids, 8, CvType.CV_32S);
+
+			columns = stats.cols();
+			values = new int[count * columns];
+			stats.get(0, 0, values);
+		}
+
+		List<Rect> candidates = new ArrayList<>();
+		int minHeight = Math.max(6, workRows / 150);
+		int maxHeight = workRows / 6;
+		for (int i = 1; i < count; i++) {
+			int offset = i * columns;
+			int x = values[offset + Imgproc.CC_STAT_LEFT];
+			int y = values[offset + Imgproc.CC_STAT_TOP];
+			int w = values[offset + Imgproc.CC_STAT_WIDTH];
+			int h = values[offset + Imgproc.CC_STAT_HEIGHT];
+			int area = values[offset + Imgproc.CC_STAT_AREA];
+
+			double aspect = (double) w / h;
+			double fill = (double) area / ((double) w * h);
+			if (h < minHeight || h > maxHeight || aspect < MIN_ASPECT || aspect > MAX_ASPECT || fill < MIN_FILL) {
+				continue;
+			}
+			candidates.add(toSource(x, y, w, h, scale, image));
+		}
+
+		// Keep the most line-like blobs, then read them top to bottom
+		Collections.sort(candidates, new Comparator<Rect>() {
+			@Override
+			public int compare(Rect a, Rect b) {
+				return Double.compare(b.area(), a.area());
+			}
+		});
+		if (candidates.size() > MAX_CANDIDATES) {
+			candidates = new ArrayList<>(candidates.subList(0, MAX_CANDIDATES));
+		}
+		Collections.sort(candidates, new Comparator<Rect>() {
+			@Override
+			public int compare(Rect a, Rect b) {
+				return Integer.compare(a.y, b.y);
+			}
+		});
+		return candidates;
+	}
+
+	private static Rect toSource(int x, int y, int w, int h, double scale, Mat image) {
+		// Pad so Tesseract sees some background around the glyphs
+		int padY = (int) Math.round(h / scale * 0.35);
+		int padX = (int) Math.round(h / scale * 0.75);
+		int left = Math.max(0, (int) Math.floor(x / scale) - padX);
+		int top = Math.max(0, (int) Math.floor(y / scale) - padY);
+		int right = Math.min(image.cols(), (int) Math.ceil((x + w) / scale) + padX);
+		int bottom = Math.min(image.rows(), (int) Math.ceil((y + h) / scale) + padY);
+		return new Rect(left, top, right - left, bottom - top);
+	}
+}
@@ -0,0 +1,58 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * Renders Aadhaar-like test cards: a header, a few lines of personal details
+ * and a 12-digit number band, scaled to any resolution. The sample number
+ * passes the Verhoeff check, but is not a real Aadhaar number.
+ */
+public final class SyntheticCard {
+
+	public static final String SAMPLE_NUMBER = "2345 6789 0124";
+
+	private SyntheticCard() {
+	}
+
+	public static BufferedImage render(int width, int height) {
+		return render(width, height, SAMPLE_NUMBER);
+	}
+
+	public static BufferedImage render(int width, int height, String number) {
+		BufferedImage card = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+		Graphics2D g2d = card.createGraphics();
+		g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g2d.setColor(Color.WHITE);
+		g2d.fillRect(0, 0, width, height);
+
+		// Header band
+		g2d.setColor(new Color(255, 153, 51));
+		g2d.fillRect(0, 0, width, height / 10);
+		g2d.setColor(Color.BLACK);
+		int unit = Math.max(8, height / 20);
+		g2d.setFont(new Font(Font.SANS_SERIF, Font.BOLD, unit));
+		g2d.drawString("Government of India", width / 20, height / 10 - unit / 4);
+
+		// Photo placeholder and details
+		g2d.setColor(new Color(200, 200, 200));
+		g2d.fillRect(width / 20, height / 6, width / 5, height / 3);
+		g2d.setColor(Color.BLACK);
+		g2d.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, unit));
+		int textX = width / 20 + width / 5 + width / 30;
+		g2d.drawString("Name: Test Person", textX, height / 6 + unit);
+		g2d.drawString("DOB: 01/01/1990", textX, height / 6 + unit * 5 / 2);
+		g2d.drawString("Gender: Female", textX, height / 6 + unit * 4);
+
+		// Number band
+		g2d.setFont(new Font(Font.SANS_SERIF, Font.BOLD, unit * 3 / 2));
+		int numberWidth = g2d.getFontMetrics().stringWidth(number);
+		g2d.drawString(number, (width - numberWidth) / 2, height * 7 / 10);
+
+		g2d.setColor(Color.RED);
+		g2d.fillRect(0, height - height / 20, width, height / 20);
+		g2d.dispose();
+		return card;
+	}
+}
@@ -0,0 +1,223 @@
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.jna.Pointer;
+
+import net.sourceforge.tess4j.ITessAPI;
+import net.sourceforge.tess4j.TessAPI;
+import net.sourceforge.tess4j.Tesseract;
+import net.sourceforge.tess4j.TesseractException;
+import net.sourceforge.tess4j.Word;
+import net.sourceforge.tess4j.util.ImageIOHelper;
+
+/**
+ * A Tesseract engine that stays initialized. {@link Tesseract} creates a native
+ * handle and loads the traineddata on every {@code getWords} or {@code doOCR}
+ * call and deletes it again afterwards; this one keeps a handle per engine mode
+ * until {@link #close()}, so the model is loaded once per engine instead of once
+ * per page or strip. Page segmentation mode and variables are written to the
+ * handle before each call, as {@link OcrProfile#apply} expects.
+ *
+ * Only the image based {@code getWords} and {@code doOCR} calls use the kept
+ * handles; the file and document calls fall through to {@link Tesseract}. Not
+ * thread-safe, like Tesseract itself.
+ */
+public class TessEngine extends Tesseract implements AutoCloseable {
+
+	private static final Logger log = LoggerFactory.getLogger(TessEngine.class);
+
+	private TessAPI api;
+	private final Map<Integer, ITessAPI.TessBaseAPI> handles = new HashMap<>();
+	private final Properties variables = new Properties();
+	private String datapath;
+	private String language;
+	private int pageSegMode = -1;
+	private int engineMode = ITessAPI.TessOcrEngineMode.OEM_DEFAULT;
+
+	public TessEngine(String datapath, String language) {
+		setDatapath(datapath);
+		setLanguage(language);
+	}
+
+	@Override
+	public void setDatapath(String datapath) {
+		super.setDatapath(datapath);
+		this.datapath = datapath;
+		close();
+	}
+
+	@Override
+	public void setLanguage(String language) {
+		super.setLanguage(language);
+		this.language = language;
+		close();
+	}
+
+	@Override
+	public void setPageSegMode(int mode) {
+		super.setPageSegMode(mode);
+		this.pageSegMode = mode;
+	}
+
+	@Override
+	public void setOcrEngineMode(int mode) {
+		super.setOcrEngineMode(mode);
+		this.engineMode = mode;
+	}
+
+	@Override
+	public void setVariable(String key, String value) {
+		super.setVariable(key, value);
+		variables.setProperty(key, value);
+	}
+
+	@Override
+	public List<Word> getWords(BufferedImage image, int level) {
+		return getWords(image, Collections.singletonList(new Rectangle(image.getWidth(), image.getHeight())), level);
+	}
+
+	@Override
+	public List<Word> getWords(List<BufferedImage> images, int level) {
+		List<Word> words = new ArrayList<>();
+		for (BufferedImage image : images) {
+			words.addAll(getWords(image, level));
+		}
+		return words;
+	}
+
+	/**
+	 * Recognizes each region of the image in turn, handing the image to Tesseract
+	 * only once. Word boxes are in the coordinates of the whole image. The calling
+	 * thread's interrupt is checked between regions.
+	 */
+	public List<Word> getWords(BufferedImage image, List<Rectangle> regions, int level) {
+		ITessAPI.TessBaseAPI handle = prepare(image);
+		List<Word> words = new ArrayList<>();
+		try {
+			for (Rectangle region : regions) {
+				MaskPipeline.checkInterrupted();
+				api.TessBaseAPISetRectangle(handle, region.x, region.y, region.width, region.height);
+				if (api.TessBaseAPIRecognize(handle, null) != 0) {
+					log.warn("Tesseract could not recognize region {}", region);
+					continue;
+				}
+				collectWords(handle, level, words);
+			}
+		} finally {
+			api.TessBaseAPIClear(handle);
+		}
+		return words;
+	}
+
+	@Override
+	public String doOCR(BufferedImage image) throws TesseractException {
+		return doOCR(image, null);
+	}
+
+	@Override
+	public String doOCR(BufferedImage image, Rectangle region) throws TesseractException {
+		ITessAPI.TessBaseAPI handle = prepare(image);
+		try {
+			if (region != null && !region.isEmpty()) {
+				api.TessBaseAPISetRectangle(handle, region.x, region.y, region.width, region.height);
+			}
+			Pointer text = api.TessBaseAPIGetUTF8Text(handle);
+			if (text == null) {
+				throw new TesseractException("Tesseract returned no text");
+			}
+			try {
+				return text.getString(0, "UTF-8");
+			} finally {
+				api.TessDeleteText(text);
+			}
+		} finally {
+			api.TessBaseAPIClear(handle);
+		}
+	}
+
+	/** Ends every native handle; the next call initializes a fresh one. */
+	@Override
+	public void close() {
+		for (ITessAPI.TessBaseAPI handle : handles.values()) {
+			api.TessBaseAPIEnd(handle);
+			api.TessBaseAPIDelete(handle);
+		}
+		handles.clear();
+	}
+
+	/** The handle for the current engine mode, configured and holding the image. */
+	private ITessAPI.TessBaseAPI prepare(BufferedImage image) {
+		ITessAPI.TessBaseAPI handle = handle();
+		if (pageSegMode > -1) {
+			api.TessBaseAPISetPageSegMode(handle, pageSegMode);
+		}
+		for (String key : variables.stringPropertyNames()) {
+			api.TessBaseAPISetVariable(handle, key, variables.getProperty(key));
+		}
+		// Same conversion as Tesseract.setImage: byte rasters keep their depth, others go to 8 bit
+		ByteBuffer buffer = ImageIOHelper.getImageByteBuffer(image);
+		int bpp = image.getRaster().getDataBuffer() instanceof DataBufferByte
+				? image.getColorModel().getPixelSize()
+				: 8;
+		api.TessBaseAPISetImage(handle, buffer, image.getWidth(), image.getHeight(), bpp / 8,
+				(int) Math.ceil(image.getWidth() * bpp / 8.0));
+		return handle;
+	}
+
+	private ITessAPI.TessBaseAPI handle() {
+		ITessAPI.TessBaseAPI handle = handles.get(engineMode);
+		if (handle == null) {
+			// Resolved here rather than at construction, so an engine can exist without libtesseract
+			api = TessAPI.INSTANCE;
+			handle = api.TessBaseAPICreate();
+			if (api.TessBaseAPIInit2(handle, datapath, language, engineMode) != 0) {
+				api.TessBaseAPIDelete(handle);
+				throw new IllegalStateException("Could not load Tesseract language " + language + " from " + datapath);
+			}
+			handles.put(engineMode, handle);
+		}
+		return handle;
+	}
+
+	private void collectWords(ITessAPI.TessBaseAPI handle, int level, List<Word> words) {
+		ITessAPI.TessResultIterator ri = api.TessBaseAPIGetIterator(handle);
+		if (ri == null) {
+			return;
+		}
+		try {
+			ITessAPI.TessPageIterator pi = api.TessResultIteratorGetPageIterator(ri);
+			api.TessPageIteratorBegin(pi);
+			do {
+				Pointer text = api.TessResultIteratorGetUTF8Text(ri, level);
+				if (text == null) {
+					continue;
+				}
+				String word = text.getString(0, "UTF-8");
+				api.TessDeleteText(text);
+				float confidence = api.TessResultIteratorConfidence(ri, level);
+				IntBuffer left = IntBuffer.allocate(1);
+				IntBuffer top = IntBuffer.allocate(1);
+				IntBuffer right = IntBuffer.allocate(1);
+				IntBuffer bottom = IntBuffer.allocate(1);
+				api.TessPageIteratorBoundingBox(pi, level, left, top, right, bottom);
+				int x = left.get();
+				int y = top.get();
+				words.add(new Word(word, confidence, new Rectangle(x, y, right.get() - x, bottom.get() - y)));
+			} while (api.TessPageIteratorNext(pi, level) == ITessAPI.TRUE);
+		} finally {
+			api.TessResultIteratorDelete(ri);
+		}
+	}
+}
@@ -0,0 +1,408 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Multi-process batch mode: masks every image in an input directory on worker
+ * JVMs ({@link MaskWorker}) instead of threads. A native crash in Tesseract or
+ * OpenCV then costs one worker and the file it was on, not the run, and native
+ * heap that fragments over a long run is handed back by replacing the process.
+ *
+ * Each worker has one file at a time. Only the path is sent; the worker reads
+ * the file itself, so no image data crosses the pipe. A worker that dies or
+ * overruns the timeout is killed and replaced and its file is sent again; a
+ * file that has taken down {@link #MAX_ATTEMPTS} workers is reported as failed.
+ * Workers are recycled after a number of images or once their resident set
+ * grows past a limit.
+ *
+ * Settings are read from system properties first, then environment variables:
+ * <ul>
+ * <li>{@code aadhaar.worker.images} / {@code AADHAAR_WORKER_IMAGES}: images before a
+ * worker is recycled, default 500</li>
+ * <li>{@code aadhaar.worker.rss.mb} / {@code AADHAAR_WORKER_RSS_MB}: resident set that
+ * gets a worker recycled, default 2048</li>
+ * <li>{@code aadhaar.worker.timeout.seconds} / {@code AADHAAR_WORKER_TIMEOUT_SECONDS}:
+ * per file and for start-up, default 300</li>
+ * <li>{@code aadhaar.worker.jvm.options} / {@code AADHAAR_WORKER_JVM_OPTIONS}: extra
+ * options for the worker JVMs, such as {@code -Xmx1g}</li>
+ * </ul>
+ * Workers inherit the environment, the class path, {@code java.library.path} and
+ * every {@code aadhaar.*} system property.
+ *
+ * Usage: WorkerSupervisor &lt;inputDir&gt; &lt;outputDir&gt; [workers]
+ */
+public class WorkerSupervisor {
+
+	private static final Logger log = LoggerFactory.getLogger(WorkerSupervisor.class);
+
+	/** Workers a single file may take down before it is given up on. */
+	public static final int MAX_ATTEMPTS = 2;
+
+	// Consecutive workers that may fail to start before a slot gives up
+	private static final int MAX_START_FAILURES = 3;
+	private static final String CLOSED = "\u0000closed";
+
+	private final int workers;
+	private final int imagesPerWorker;
+	private final long maxResidentBytes;
+	private final long timeoutMillis;
+	private final List<String> jvmOptions = new ArrayList<>();
+	private final AtomicInteger live = new AtomicInteger();
+
+	public WorkerSupervisor(int workers) {
+		this.workers = workers;
+		this.imagesPerWorker = intSetting("aadhaar.worker.images", "AADHAAR_WORKER_IMAGES", 500);
+		this.maxResidentBytes = intSetting("aadhaar.worker.rss.mb", "AADHAAR_WORKER_RSS_MB", 2048) * 1024L * 1024;
+		this.timeoutMillis = TimeUnit.SECONDS
+				.toMillis(intSetting("aadhaar.worker.timeout.seconds", "AADHAAR_WORKER_TIMEOUT_SECONDS", 300));
+		String options = Bootstrap.setting("aadhaar.worker.jvm.options", "AADHAAR_WORKER_JVM_OPTIONS");
+		if (options != null) {
+			jvmOptions.addAll(Arrays.asList(options.trim().split("\\s+")));
+		}
+		Metrics.gauge("workers_live", live::get);
+	}
+
+	public void run(File inputDir, File outputDir) throws InterruptedException {
+		File[] inputs = inputDir.listFiles(BatchMasker::isImageFile);
+		if (inputs == null) {
+			throw new IllegalArgumentException("Not a readable directory: " + inputDir);
+		}
+		if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+			throw new IllegalArgumentException("Cannot create output directory: " + outputDir);
+		}
+
+		Batch batch = new Batch(inputs.length);
+		for (int i = 0; i < inputs.length; i++) {
+			batch.jobs.add(new Job(i, inputs[i]));
+		}
+		List<String> command = command(outputDir);
+		long start = System.nanoTime();
+
+		List<Thread> slots = new ArrayList<>(workers);
+		for (int i = 0; i < workers; i++) {
+			Thread slot = new Thread(new Slot(batch, command), "worker-slot-" + i);
+			slot.start();
+			slots.add(slot);
+		}
+		for (Thread slot : slots) {
+			slot.join();
+		}
+
+		// Only left over when no worker could be started at all
+		Job job;
+		while ((job = batch.jobs.poll()) != null) {
+			batch.complete(job, "failed", "no worker available");
+		}
+		printSummary(batch, inputs.length, System.nanoTime() - start);
+	}
+
+	private List<String> command(File outputDir) {
+		List<String> command = new ArrayList<>();
+		command.add(new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath());
+		command.addAll(jvmOptions);
+		for (String name : System.getProperties().stringPropertyNames()) {
+			if (name.startsWith("aadhaar.") || name.equals("java.library.path")) {
+				command.add("-D" + name + "=" + System.getProperty(name));
+			}
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(MaskWorker.class.getName());
+		command.add(outputDir.getAbsolutePath());
+		return command;
+	}
+
+	private static void printSummary(Batch batch, int files, long elapsedNanos) {
+		BatchMasker.printSummary(files, batch.masked.get(), batch.failed.get(), elapsedNanos, batch.latencies);
+		System.out.println("Workers started: " + batch.started.get() + ", files redriven: " + batch.redriven.get());
+	}
+
+	private static int intSetting(String property, String environment, int defaultValue) {
+		String value = Bootstrap.setting(property, environment);
+		return value != null ? Integer.parseInt(value) : defaultValue;
+	}
+
+	private static final class Job {
+		final int id;
+		final File file;
+		long startNanos;
+		int attempts;
+
+		Job(int id, File file) {
+			this.id = id;
+			this.file = file;
+		}
+	}
+
+	/** Files still to do and the tallies of those done. */
+	private static final class Batch {
+		final BlockingDeque<Job> jobs = new LinkedBlockingDeque<>();
+		final CountDownLatch remaining;
+		final long[] latencies;
+		final AtomicInteger masked = new AtomicInteger();
+		final AtomicInteger failed = new AtomicInteger();
+		final AtomicInteger started = new AtomicInteger();
+		final AtomicInteger redriven = new AtomicInteger();
+
+		Batch(int files) {
+			this.remaining = new CountDownLatch(files);
+			this.latencies = new long[files];
+		}
+
+		void complete(Job job, String status, String detail) {
+			latencies[job.id] = job.startNanos == 0 ? 0 : System.nanoTime() - job.startNanos;
+			if (status.equals("masked")) {
+				masked.incrementAndGet();
+			} else if (status.equals("failed")) {
+				failed.incrementAndGet();
+				log.warn("Failed to mask {}: {}", job.file.getName(), detail);
+			}
+			remaining.countDown();
+		}
+	}
+
+	/** Keeps one worker busy, replacing it whenever it dies, hangs or is due for recycling. */
+	private final class Slot implements Runnable {
+		private final Batch batch;
+		private final List<String> command;
+		private Worker worker;
+		private int images;
+		private int startFailures;
+
+		Slot(Batch batch, List<String> command) {
+			this.batch = batch;
+			this.command = command;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (batch.remaining.getCount() > 0) {
+					Job job = batch.jobs.poll(1, TimeUnit.SECONDS);
+					if (job == null) {
+						continue;
+					}
+					if (worker == null && !startWorker()) {
+						batch.jobs.addFirst(job);
+						if (startFailures >= MAX_START_FAILURES) {
+							log.error("{}: giving up after {} workers failed to start", Thread.currentThread().getName(),
+									startFailures);
+							return;
+						}
+						continue;
+					}
+					process(job);
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			} finally {
+				stopWorker();
+			}
+		}
+
+		private boolean startWorker() throws InterruptedException {
+			try {
+				worker = Worker.start(command, timeoutMillis);
+				images = 0;
+				startFailures = 0;
+				live.incrementAndGet();
+				batch.started.incrementAndGet();
+				Metrics.increment("workers_started_total", 1);
+				return true;
+			} catch (IOException ex) {
+				startFailures++;
+				log.warn("Worker failed to start: {}", ex.getMessage());
+				return false;
+			}
+		}
+
+		private void process(Job job) throws InterruptedException {
+			String[] reply;
+			long resident;
+			try {
+				reply = worker.send(job, timeoutMillis);
+				resident = parseResident(reply[1]);
+			} catch (IOException ex) {
+				String reason = !worker.isAlive() ? "crash" : ex instanceof MalformedReplyException ? "protocol" : "timeout";
+				log.warn("Worker {} on {}: {}", new Object[] { reason, job.file.getName(), ex.getMessage() });
+				Metrics.increment("worker_restarts_total{reason=\"" + reason + "\"}", 1);
+				worker.kill();
+				worker = null;
+				live.decrementAndGet();
+				redrive(job, reason);
+				return;
+			}
+			batch.complete(job, reply[0], reply[2]);
+			images++;
+
+			String reason = images >= imagesPerWorker ? "images" : resident > maxResidentBytes ? "rss" : null;
+			if (reason != null) {
+				Metrics.increment("worker_restarts_total{reason=\"" + reason + "\"}", 1);
+				stopWorker();
+			}
+		}
+
+		private long parseResident(String value) throws MalformedReplyException {
+			try {
+				return Long.parseLong(value);
+			} catch (NumberFormatException ex) {
+				throw new MalformedReplyException("unreadable reply: " + value);
+			}
+		}
+
+		private void redrive(Job job, String reason) {
+			job.attempts++;
+			if (job.attempts >= MAX_ATTEMPTS) {
+				batch.complete(job, "failed", "worker " + reason + " on " + job.attempts + " attempts");
+				return;
+			}
+			batch.redriven.incrementAndGet();
+			Metrics.increment("worker_jobs_redriven_total", 1);
+			// At the front, so it does not wait behind the rest of the batch
+			batch.jobs.addFirst(job);
+		}
+
+		private void stopWorker() {
+			if (worker != null) {
+				worker.stop();
+				worker = null;
+				live.decrementAndGet();
+			}
+		}
+	}
+
+	/** A worker answered with something the protocol does not allow; it is treated like a crash. */
+	private static final class MalformedReplyException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		MalformedReplyException(String message) {
+			super(message);
+		}
+	}
+
+	/** A worker process and the lines it has printed. */
+	private static final class Worker {
+		private final Process process;
+		private final BufferedWriter requests;
+		private final BlockingQueue<String> replies = new LinkedBlockingQueue<>();
+
+		private Worker(Process process) {
+			this.process = process;
+			this.requests = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+			Thread reader = new Thread(this::readReplies, "worker-reader");
+			reader.setDaemon(true);
+			reader.start();
+		}
+
+		/** Starts a worker and waits until it has warmed up. */
+		static Worker start(List<String> command, long timeoutMillis) throws IOException, InterruptedException {
+			Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+			Worker worker = new Worker(process);
+			try {
+				String line;
+				do {
+					line = worker.next(timeoutMillis);
+				} while (!line.startsWith("ready"));
+				return worker;
+			} catch (IOException ex) {
+				worker.kill();
+				throw ex;
+			}
+		}
+
+		/** Sends the job and returns status, resident bytes and detail from the reply. */
+		String[] send(Job job, long timeoutMillis) throws IOException, InterruptedException {
+			// Timed from the first send, like a thread picking up the file in BatchMasker
+			if (job.attempts == 0) {
+				job.startNanos = System.nanoTime();
+			}
+			requests.write(job.id + "\t" + job.file.getAbsolutePath());
+			requests.newLine();
+			requests.flush();
+			String id = Integer.toString(job.id);
+			while (true) {
+				String[] parts = next(timeoutMillis).split("\t", 4);
+				if (parts.length == 4 && parts[0].equals(id)) {
+					return Arrays.copyOfRange(parts, 1, 4);
+				}
+			}
+		}
+
+		private String next(long timeoutMillis) throws IOException, InterruptedException {
+			String line = replies.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+			if (line == null) {
+				throw new IOException("no reply within " + timeoutMillis + " ms");
+			}
+			if (line == CLOSED) {
+				process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS);
+				throw new IOException("exited" + (process.isAlive() ? "" : " with status " + process.exitValue()));
+			}
+			return line;
+		}
+
+		private void readReplies() {
+			try (BufferedReader reader = new BufferedReader(
+					new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					replies.add(line);
+				}
+			} catch (IOException ex) {
+				// The process is gone; the slot finds out from CLOSED
+			} finally {
+				replies.add(CLOSED);
+			}
+		}
+
+		boolean isAlive() {
+			return process.isAlive();
+		}
+
+		/** Closes stdin so the worker finishes and exits; kills it if it does not. */
+		void stop() {
+			try {
+				requests.close();
+				if (!process.waitFor(30, TimeUnit.SECONDS)) {
+					kill();
+				}
+			} catch (IOException ex) {
+				kill();
+			} catch (InterruptedException ex) {
+				kill();
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		void kill() {
+			process.destroyForcibly();
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length < 2) {
+			System.err.println("Usage: WorkerSupervisor <inputDir> <outputDir> [workers]");
+			System.exit(2);
+		}
+		int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		Metrics.startPeriodicLog(60);
+		new WorkerSupervisor(workers).run(new File(args[0]), new File(args[1]));
+	}
+}